@@ -0,0 +1,138 @@
+package com.flippingdetector;
+
+import java.io.File;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Sweeps a grid of config values over a {@link HistoryFrame}, one
+ * {@link SimulatedGe} per combination, as many at once as there are threads.
+ * Each combination's row is written to the CSV as soon as it finishes, so
+ * memory is bounded by the threads in flight rather than the grid.
+ * <p>
+ * {@code ./gradlew backtest -Pbacktest="history.bin --gp=50000000 --out=results.csv minMarginPct=0.5,1,2 maxVolatilityPct=10,20 rankBy=ROI,EXPECTED_PROFIT"}
+ */
+public final class Backtest
+{
+    private Backtest() {}
+
+    public static void main(String[] args) throws Exception
+    {
+        File frameFile = null;
+        File out = new File("backtest.csv");
+        long gp = 10_000_000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Map<String, String[]> grid = new LinkedHashMap<>();
+        for (String arg : args)
+        {
+            if (arg.startsWith("--gp=")) gp = Long.parseLong(arg.substring(5).replace("_", ""));
+            else if (arg.startsWith("--out=")) out = new File(arg.substring(6));
+            else if (arg.startsWith("--threads=")) threads = Integer.parseInt(arg.substring(10));
+            else if (arg.contains("=")) grid.put(arg.substring(0, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1).split(","));
+            else frameFile = new File(arg);
+        }
+        if (frameFile == null)
+        {
+            System.err.println("Usage: Backtest FRAME [--gp=N] [--out=FILE] [--threads=N] [configKey=v1,v2,...]...");
+            System.exit(2);
+        }
+
+        List<Map<String, String>> points = expand(grid);
+        // Fail on a bad key or value before anything runs
+        points.forEach(ConfigOverrides::of);
+
+        try (HistoryFrame frame = HistoryFrame.open(frameFile);
+             Writer csv = Files.newBufferedWriter(out.toPath(), StandardCharsets.UTF_8))
+        {
+            System.out.printf("%d steps of %ds, %d items, %d combinations on %d threads%n",
+                    frame.steps(), frame.stepSeconds(), frame.items(), points.size(), threads);
+            csv.write(String.join(",", grid.keySet()) + (grid.isEmpty() ? "" : ",")
+                    + "final_gp,profit,roi_pct,gp_per_hour,flips,cancelled_buys,dumped_sells,max_drawdown_pct\n");
+
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try
+            {
+                CompletionService<String> done = new ExecutorCompletionService<>(pool);
+                long startGp = gp;
+                for (Map<String, String> point : points)
+                {
+                    done.submit(() -> row(point, run(frame, ConfigOverrides.of(point), startGp)));
+                }
+
+                long started = System.nanoTime();
+                for (int i = 1; i <= points.size(); i++)
+                {
+                    Future<String> f = done.take();
+                    csv.write(f.get());
+                    csv.flush();
+                    System.out.printf("%d/%d after %.0fs%n", i, points.size(), (System.nanoTime() - started) / 1e9);
+                }
+            }
+            finally
+            {
+                pool.shutdownNow();
+            }
+        }
+        System.out.println("Results in " + out);
+    }
+
+    static SimulatedGe.Result run(HistoryFrame frame, FlippingDetectorConfig config, long gp)
+    {
+        // The sweep is already parallel, so each run ranks on its own thread
+        Metrics metrics = new Metrics();
+        ScoringPipeline pipeline = new ScoringPipeline(config, metrics, 1);
+        SuggestionPlanner planner = new SuggestionPlanner(config, new SuggestionEngine(config, pipeline, metrics),
+                new SuggestionEngine(config, pipeline, metrics), metrics);
+        return new SimulatedGe(frame, planner).run(gp);
+    }
+
+    private static List<Map<String, String>> expand(Map<String, String[]> grid)
+    {
+        List<Map<String, String>> points = new ArrayList<>();
+        points.add(new LinkedHashMap<>());
+        for (Map.Entry<String, String[]> axis : grid.entrySet())
+        {
+            List<Map<String, String>> next = new ArrayList<>(points.size() * axis.getValue().length);
+            for (Map<String, String> p : points)
+            {
+                for (String v : axis.getValue())
+                {
+                    Map<String, String> q = new LinkedHashMap<>(p);
+                    q.put(axis.getKey(), v);
+                    next.add(q);
+                }
+            }
+            points = next;
+        }
+        return points;
+    }
+
+    private static String row(Map<String, String> point, SimulatedGe.Result r)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (String v : point.values())
+        {
+            sb.append(v).append(',');
+        }
+        return sb.append(r.getFinalGp()).append(',')
+                .append(r.getProfit()).append(',')
+                .append(String.format(Locale.ROOT, "%.3f", r.getRoiPct())).append(',')
+                .append(r.getGpPerHour()).append(',')
+                .append(r.getFlips()).append(',')
+                .append(r.getCancelledBuys()).append(',')
+                .append(r.getDumpedSells()).append(',')
+                .append(String.format(Locale.ROOT, "%.2f", r.getMaxDrawdownPct())).append('\n')
+                .toString();
+    }
+}
@@ -0,0 +1,64 @@
+package com.flippingdetector;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The plugin config with some items overridden by key name, for the offline
+ * tools. Values are parsed by the item's return type.
+ */
+final class ConfigOverrides
+{
+    private ConfigOverrides() {}
+
+    /**
+     * @throws IllegalArgumentException for a key that is not a config item
+     */
+    static FlippingDetectorConfig of(Map<String, String> overrides)
+    {
+        Map<String, String> remaining = new TreeMap<>(overrides);
+        Map<String, Object> values = new HashMap<>();
+        for (Method m : FlippingDetectorConfig.class.getDeclaredMethods())
+        {
+            String raw = remaining.remove(m.getName());
+            if (raw != null)
+                values.put(m.getName(), parse(m.getReturnType(), raw));
+        }
+        if (!remaining.isEmpty())
+        {
+            throw new IllegalArgumentException("Unknown config keys " + remaining.keySet());
+        }
+
+        return (FlippingDetectorConfig) Proxy.newProxyInstance(FlippingDetectorConfig.class.getClassLoader(),
+                new Class<?>[]{FlippingDetectorConfig.class},
+                (proxy, method, args) ->
+                {
+                    if (values.containsKey(method.getName()))
+                        return values.get(method.getName());
+                    if (method.getDeclaringClass() == Object.class)
+                    {
+                        switch (method.getName())
+                        {
+                            case "equals": return proxy == args[0];
+                            case "hashCode": return System.identityHashCode(proxy);
+                            default: return "Config" + values;
+                        }
+                    }
+                    return method.invoke(MarketData.DEFAULT_CONFIG, args);
+                });
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object parse(Class<?> type, String raw)
+    {
+        if (type == int.class) return Integer.parseInt(raw);
+        if (type == long.class) return Long.parseLong(raw);
+        if (type == double.class) return Double.parseDouble(raw);
+        if (type == boolean.class) return Boolean.parseBoolean(raw);
+        if (type.isEnum()) return Enum.valueOf((Class<Enum>) type, raw);
+        return raw;
+    }
+}
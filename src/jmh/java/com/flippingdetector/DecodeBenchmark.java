@@ -0,0 +1,83 @@
+package com.flippingdetector;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decoding the price API payloads and building the snapshot from them, as
+ * PriceService does on each poll. Pass a recorded /latest body with
+ * {@code -p latestFixture=path}; otherwise a synthetic one of {@code items}
+ * items is used.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecodeBenchmark
+{
+    @Param({"4000", "25000", "100000"})
+    int items;
+
+    @Param({""})
+    String latestFixture;
+
+    private byte[] latest;
+    private byte[] mapping;
+    private final WikiDecoder.LatestColumns columns = new WikiDecoder.LatestColumns();
+    private MarketSnapshot previous;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        latest = latestFixture.isEmpty() ? MarketData.latestJson(items, 42) : Files.readAllBytes(Paths.get(latestFixture));
+        mapping = MarketData.mappingJson(items, 42);
+        WikiDecoder.decodeLatest(new ByteArrayInputStream(latest), columns);
+        previous = build();
+    }
+
+    @Benchmark
+    public long decodeLatest() throws IOException
+    {
+        return WikiDecoder.decodeLatest(new ByteArrayInputStream(latest), columns);
+    }
+
+    @Benchmark
+    public Map<Integer, MappingCache.MapMeta> decodeMapping() throws IOException
+    {
+        return WikiDecoder.decodeMapping(new ByteArrayInputStream(mapping));
+    }
+
+    @Benchmark
+    public MarketSnapshot buildSnapshot()
+    {
+        return build();
+    }
+
+    // The column-to-snapshot step of PriceService.refresh, diffed against the previous poll
+    private MarketSnapshot build()
+    {
+        MarketSnapshot.Builder b = MarketSnapshot.builder(columns.size);
+        for (int i = 0; i < columns.size; i++)
+        {
+            b.add(columns.ids[i], "Item", columns.low[i], columns.high[i], 1000, 100, 5.0, columns.lowTime[i], columns.highTime[i]);
+        }
+        return b.build(previous);
+    }
+}
@@ -0,0 +1,66 @@
+package com.flippingdetector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One full filter pass over a snapshot, from the columns and from materialised rows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FiltersBenchmark
+{
+    @Param({"4000", "25000", "100000"})
+    int items;
+
+    private MarketSnapshot snapshot;
+    private List<ItemInfo> rows;
+    private OfferView offers;
+    private final FlippingDetectorConfig config = MarketData.DEFAULT_CONFIG;
+
+    @Setup
+    public void setUp()
+    {
+        snapshot = MarketData.snapshot(items, 42);
+        rows = new ArrayList<>(snapshot.items());
+        offers = MarketData.offers(items);
+    }
+
+    @Benchmark
+    public int columns()
+    {
+        int passed = 0;
+        for (int i = 0; i < snapshot.size(); i++)
+        {
+            if (Filters.passes(snapshot, i, config, offers)) passed++;
+        }
+        return passed;
+    }
+
+    @Benchmark
+    public int itemInfo()
+    {
+        int passed = 0;
+        for (ItemInfo info : rows)
+        {
+            if (Filters.passes(info, config, offers)) passed++;
+        }
+        return passed;
+    }
+}
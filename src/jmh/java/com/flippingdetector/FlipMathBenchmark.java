@@ -0,0 +1,70 @@
+package com.flippingdetector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Candidate construction over every row, against the allocation-free score
+ * the scoring pipeline uses to reject rows first.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FlipMathBenchmark
+{
+    private static final long BUDGET = 10_000_000;
+
+    @Param({"4000", "25000", "100000"})
+    int items;
+
+    @Param({"EXPECTED_PROFIT", "PROFIT_PER_HOUR"})
+    ScoreFunction scoring;
+
+    private MarketSnapshot snapshot;
+    private List<ItemInfo> rows;
+    private final FlippingDetectorConfig config = MarketData.DEFAULT_CONFIG;
+
+    @Setup
+    public void setUp()
+    {
+        snapshot = MarketData.snapshot(items, 42);
+        rows = new ArrayList<>(snapshot.items());
+    }
+
+    @Benchmark
+    public void makeCandidate(Blackhole bh)
+    {
+        for (ItemInfo info : rows)
+        {
+            bh.consume(FlipMath.makeCandidate(info, BUDGET, config));
+        }
+    }
+
+    @Benchmark
+    public double score()
+    {
+        double sum = 0;
+        for (int i = 0; i < snapshot.size(); i++)
+        {
+            double s = FlipMath.score(snapshot, i, BUDGET, scoring, false);
+            if (!Double.isNaN(s)) sum += s;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,385 @@
+package com.flippingdetector;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Market history as fixed-width bars in a memory-mapped file, one block per
+ * time step holding every item column by column. A backtest walks the steps
+ * in order, so it streams through the file; the page cache is shared by every
+ * reader, however many configurations run over it at once.
+ * <p>
+ * Besides the raw bar (average low and high, volume on each side) each step
+ * stores the rolling 24h volume, last-hour volume and 24h volatility of the
+ * midpoint, derived once when the file is written.
+ * <p>
+ * Reads are absolute, so one frame can be shared between threads.
+ */
+final class HistoryFrame implements Closeable
+{
+    private static final int MAGIC = 0x46444846; // "FDHF"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int PLANES = 7;
+    // Keeps each mapping well under the 2 GiB a single buffer can address
+    private static final long SEGMENT_BYTES = 1L << 30;
+    private static final long DAY_SECONDS = 24 * 3600;
+    // Same minimum HistoryService asks for before trusting a volatility figure
+    private static final int MIN_VOLATILITY_SAMPLES = 12;
+
+    private static final int LOW = 0;
+    private static final int HIGH = 1;
+    private static final int LOW_VOLUME = 2;
+    private static final int HIGH_VOLUME = 3;
+    private static final int DAILY_VOLUME = 4;
+    private static final int HOURLY_VOLUME = 5;
+    private static final int VOLATILITY = 6;
+
+    private final FileChannel channel;
+    private final long stepSeconds;
+    private final long startSec;
+    private final int steps;
+    private final int[] ids;
+    private final int[] limits;
+    private final int stepBytes;
+    private final int stepsPerSegment;
+    private final long dataOffset;
+    private final MappedByteBuffer[] segments;
+
+    private HistoryFrame(File file) throws IOException
+    {
+        channel = new RandomAccessFile(file, "r").getChannel();
+        try
+        {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (header.getInt() != MAGIC || header.getInt() != FORMAT_VERSION)
+            {
+                throw new IOException("Not a history frame: " + file);
+            }
+            stepSeconds = header.getLong();
+            startSec = header.getLong();
+            steps = header.getInt();
+            int items = header.getInt();
+
+            ByteBuffer table = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, 8L * items);
+            ids = new int[items];
+            limits = new int[items];
+            for (int i = 0; i < items; i++)
+            {
+                ids[i] = table.getInt();
+                limits[i] = table.getInt();
+            }
+
+            dataOffset = HEADER_BYTES + 8L * items;
+            stepBytes = PLANES * 4 * items;
+            stepsPerSegment = (int) Math.max(1, SEGMENT_BYTES / Math.max(1, stepBytes));
+            segments = new MappedByteBuffer[(steps + stepsPerSegment - 1) / stepsPerSegment];
+            for (int s = 0; s < segments.length; s++)
+            {
+                int count = Math.min(stepsPerSegment, steps - s * stepsPerSegment);
+                segments[s] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        dataOffset + (long) s * stepsPerSegment * stepBytes, (long) count * stepBytes);
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            channel.close();
+            throw e;
+        }
+    }
+
+    static HistoryFrame open(File file) throws IOException
+    {
+        return new HistoryFrame(file);
+    }
+
+    int steps()
+    {
+        return steps;
+    }
+
+    int items()
+    {
+        return ids.length;
+    }
+
+    long stepSeconds()
+    {
+        return stepSeconds;
+    }
+
+    /**
+     * @return epoch seconds at the start of {@code step}
+     */
+    long timeSec(int step)
+    {
+        return startSec + step * stepSeconds;
+    }
+
+    int itemId(int item)
+    {
+        return ids[item];
+    }
+
+    int buyLimit(int item)
+    {
+        return limits[item];
+    }
+
+    /**
+     * @return average instant-sell price over the step, or 0 if nothing traded
+     */
+    int low(int step, int item)
+    {
+        return get(step, LOW, item);
+    }
+
+    /**
+     * @return average instant-buy price over the step, or 0 if nothing traded
+     */
+    int high(int step, int item)
+    {
+        return get(step, HIGH, item);
+    }
+
+    int lowVolume(int step, int item)
+    {
+        return get(step, LOW_VOLUME, item);
+    }
+
+    int highVolume(int step, int item)
+    {
+        return get(step, HIGH_VOLUME, item);
+    }
+
+    /**
+     * @return units traded over the 24h up to and including {@code step}
+     */
+    int dailyVolume(int step, int item)
+    {
+        return get(step, DAILY_VOLUME, item);
+    }
+
+    /**
+     * @return units traded over the hour up to and including {@code step}
+     */
+    int hourlyVolume(int step, int item)
+    {
+        return get(step, HOURLY_VOLUME, item);
+    }
+
+    /**
+     * @return 24h volatility of the midpoint in percent, or NaN without enough samples
+     */
+    double volatilityPct(int step, int item)
+    {
+        return Float.intBitsToFloat(get(step, VOLATILITY, item));
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    private int get(int step, int plane, int item)
+    {
+        int offset = (step % stepsPerSegment) * stepBytes + (plane * ids.length + item) * 4;
+        return segments[step / stepsPerSegment].getInt(offset);
+    }
+
+    /**
+     * Writes a frame one step at a time, deriving the rolling columns as it
+     * goes. Holds 24h of volume and midpoints per item, whatever the length.
+     */
+    static final class Writer implements Closeable
+    {
+        private final FileChannel channel;
+        private final int[] index;
+        private final int items;
+        private final ByteBuffer block;
+        private int steps;
+
+        // Rolling windows, one ring per item
+        private final int window;
+        private final int hourSteps;
+        private final int[][] volumes;
+        private final double[][] mids;
+        private final long[] dailySum;
+        private final long[] hourlySum;
+        private final double[] shift;
+        private final double[] midSum;
+        private final double[] midSumSq;
+        private final int[] midCount;
+
+        /**
+         * @param ids    item ids; bars for anything else are dropped
+         * @param limits buy limit for the id at the same position
+         */
+        Writer(File file, int[] ids, int[] limits, long stepSeconds, long startSec) throws IOException
+        {
+            this.items = ids.length;
+            int maxId = 0;
+            for (int id : ids)
+            {
+                maxId = Math.max(maxId, id);
+            }
+            index = new int[maxId + 1];
+            Arrays.fill(index, -1);
+            for (int i = 0; i < items; i++)
+            {
+                index[ids[i]] = i;
+            }
+
+            window = (int) Math.max(1, DAY_SECONDS / stepSeconds);
+            hourSteps = (int) Math.max(1, 3600 / stepSeconds);
+            volumes = new int[items][window];
+            mids = new double[items][window];
+            dailySum = new long[items];
+            hourlySum = new long[items];
+            shift = new double[items];
+            Arrays.fill(shift, Double.NaN);
+            midSum = new double[items];
+            midSumSq = new double[items];
+            midCount = new int[items];
+            block = ByteBuffer.allocateDirect(PLANES * 4 * items);
+
+            channel = new RandomAccessFile(file, "rw").getChannel();
+            channel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES + 8 * items);
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(stepSeconds).putLong(startSec).putInt(0).putInt(items);
+            for (int i = 0; i < items; i++)
+            {
+                header.putInt(ids[i]).putInt(limits[i]);
+            }
+            header.flip();
+            while (header.hasRemaining())
+            {
+                channel.write(header);
+            }
+        }
+
+        int steps()
+        {
+            return steps;
+        }
+
+        /**
+         * Appends the next step. An empty bar is a step in which nothing traded.
+         */
+        void append(WikiDecoder.AggregateColumns bar) throws IOException
+        {
+            int[] low = new int[items];
+            int[] high = new int[items];
+            int[] lowVol = new int[items];
+            int[] highVol = new int[items];
+            for (int r = 0; r < bar.size; r++)
+            {
+                int id = bar.ids[r];
+                int i = id >= 0 && id < index.length ? index[id] : -1;
+                if (i < 0) continue;
+                low[i] = (int) Math.min(Integer.MAX_VALUE, bar.avgLow[r]);
+                high[i] = (int) Math.min(Integer.MAX_VALUE, bar.avgHigh[r]);
+                lowVol[i] = bar.lowVolume[r];
+                highVol[i] = bar.highVolume[r];
+            }
+
+            int slot = steps % window;
+            block.clear();
+            putPlane(low);
+            putPlane(high);
+            putPlane(lowVol);
+            putPlane(highVol);
+            int[] daily = new int[items];
+            int[] hourly = new int[items];
+            float[] volatility = new float[items];
+            for (int i = 0; i < items; i++)
+            {
+                int volume = (int) Math.min(Integer.MAX_VALUE, (long) lowVol[i] + highVol[i]);
+                dailySum[i] += volume - volumes[i][slot];
+                hourlySum[i] += volume - volumes[i][(steps - hourSteps + window) % window];
+                volumes[i][slot] = volume;
+                daily[i] = (int) Math.min(Integer.MAX_VALUE, dailySum[i]);
+                hourly[i] = (int) Math.min(Integer.MAX_VALUE, hourlySum[i]);
+                volatility[i] = (float) pushMid(i, slot, midpoint(low[i], high[i]));
+            }
+            putPlane(daily);
+            putPlane(hourly);
+            for (float v : volatility)
+            {
+                block.putInt(Float.floatToRawIntBits(v));
+            }
+
+            block.flip();
+            long position = HEADER_BYTES + 8L * items + (long) steps * block.capacity();
+            while (block.hasRemaining())
+            {
+                position += channel.write(block, position);
+            }
+            steps++;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            try
+            {
+                ByteBuffer count = ByteBuffer.allocate(4).putInt(0, steps);
+                channel.write(count, 24);
+                channel.force(true);
+            }
+            finally
+            {
+                channel.close();
+            }
+        }
+
+        private void putPlane(int[] values)
+        {
+            for (int v : values)
+            {
+                block.putInt(v);
+            }
+        }
+
+        // Same sample statistics as HistoryService's PriceSeries, over a 24h ring
+        private double pushMid(int i, int slot, double mid)
+        {
+            if (steps >= window && mids[i][slot] > 0)
+            {
+                double x = mids[i][slot] - shift[i];
+                midSum[i] -= x;
+                midSumSq[i] -= x * x;
+                midCount[i]--;
+            }
+            mids[i][slot] = mid;
+            if (mid > 0)
+            {
+                if (Double.isNaN(shift[i])) shift[i] = mid;
+                double x = mid - shift[i];
+                midSum[i] += x;
+                midSumSq[i] += x * x;
+                midCount[i]++;
+            }
+
+            int n = midCount[i];
+            if (n < MIN_VOLATILITY_SAMPLES) return Double.NaN;
+            double mean = midSum[i] / n;
+            double variance = Math.max(0, (midSumSq[i] - midSum[i] * mean) / (n - 1));
+            return 100.0 * Math.sqrt(variance) / Math.max(1.0, mean + shift[i]);
+        }
+
+        private static double midpoint(long low, long high)
+        {
+            if (low <= 0) return high;
+            if (high <= 0) return low;
+            return (low + high) / 2.0;
+        }
+    }
+}
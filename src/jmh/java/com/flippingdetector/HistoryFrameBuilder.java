@@ -0,0 +1,224 @@
+package com.flippingdetector;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Builds a {@link HistoryFrame} from the wiki's timestamped /5m or /1h
+ * aggregates, from the same payloads in session recordings, or from the 5m
+ * bars the plugin keeps in its {@link PriceStore}.
+ * <p>
+ * {@code ./gradlew historyFrame -Pframe="--out=history.bin --timestep=5m --from=2026-07-01 --to=2026-10-01"}
+ * <br>
+ * {@code ./gradlew historyFrame -Pframe="--out=history.bin --timestep=5m recordings/*.fdr.gz"}
+ * <br>
+ * {@code ./gradlew historyFrame -Pframe="--out=history.bin --store=$HOME/.runelite/flipping-detector/prices --from=2026-10-01 --to=2026-10-15"}
+ */
+public final class HistoryFrameBuilder
+{
+    private static final int RETRIES = 3;
+
+    private HistoryFrameBuilder() {}
+
+    public static void main(String[] args) throws Exception
+    {
+        File out = null;
+        String timestep = "5m";
+        LocalDate from = null, to = null;
+        long delayMs = 1000;
+        File store = null;
+        List<File> recordings = new ArrayList<>();
+        for (String arg : args)
+        {
+            if (arg.startsWith("--out=")) out = new File(arg.substring(6));
+            else if (arg.startsWith("--timestep=")) timestep = arg.substring(11);
+            else if (arg.startsWith("--from=")) from = LocalDate.parse(arg.substring(7));
+            else if (arg.startsWith("--to=")) to = LocalDate.parse(arg.substring(5));
+            else if (arg.startsWith("--delay-ms=")) delayMs = Long.parseLong(arg.substring(11));
+            else if (arg.startsWith("--store=")) store = new File(arg.substring(8));
+            else recordings.add(new File(arg));
+        }
+        if (out == null || !timestep.equals("5m") && !timestep.equals("1h") || recordings.isEmpty() == (from == null || to == null)
+                || store != null && (!timestep.equals("5m") || !recordings.isEmpty()))
+        {
+            System.err.println("Usage: HistoryFrameBuilder --out=FILE [--timestep=5m|1h] (--from=DATE --to=DATE [--delay-ms=N | --store=DIR] | RECORDING...)");
+            System.exit(2);
+        }
+
+        long stepSeconds = timestep.equals("5m") ? 300 : 3600;
+        int steps;
+        if (!recordings.isEmpty())
+            steps = fromRecordings(out, timestep, stepSeconds, recordings);
+        else if (store != null)
+            steps = fromStore(out, store, from.toEpochSecond(LocalTime.MIDNIGHT, ZoneOffset.UTC),
+                    to.toEpochSecond(LocalTime.MIDNIGHT, ZoneOffset.UTC));
+        else
+            steps = fromWiki(out, timestep, stepSeconds, from.toEpochSecond(LocalTime.MIDNIGHT, ZoneOffset.UTC),
+                    to.toEpochSecond(LocalTime.MIDNIGHT, ZoneOffset.UTC), delayMs);
+        System.out.printf("Wrote %d steps of %s to %s (%d MiB)%n", steps, timestep, out, out.length() >> 20);
+    }
+
+    private static int fromWiki(File out, String timestep, long stepSeconds, long fromSec, long toSec, long delayMs)
+            throws IOException, InterruptedException
+    {
+        OkHttpClient http = new OkHttpClient();
+        Map<Integer, MappingCache.MapMeta> mapping = WikiDecoder.decodeMapping(new ByteArrayInputStream(get(http, "mapping")));
+        WikiDecoder.AggregateColumns bar = new WikiDecoder.AggregateColumns();
+        try (HistoryFrame.Writer w = writer(out, mapping, stepSeconds, fromSec))
+        {
+            for (long t = fromSec; t < toSec; t += stepSeconds)
+            {
+                byte[] body = null;
+                for (int attempt = 1; body == null && attempt <= RETRIES; attempt++)
+                {
+                    try
+                    {
+                        body = get(http, timestep + "?timestamp=" + t);
+                    }
+                    catch (IOException e)
+                    {
+                        System.err.printf("%s at %d failed (%s), attempt %d%n", timestep, t, e.getMessage(), attempt);
+                        TimeUnit.MILLISECONDS.sleep(delayMs * attempt * 4);
+                    }
+                }
+                if (body != null)
+                    WikiDecoder.decodeAggregates(new ByteArrayInputStream(body), bar);
+                else
+                    bar.clear();
+                w.append(bar);
+                if (w.steps() % 288 == 0)
+                    System.out.printf("%d steps%n", w.steps());
+                TimeUnit.MILLISECONDS.sleep(delayMs);
+            }
+            return w.steps();
+        }
+    }
+
+    private static int fromRecordings(File out, String timestep, long stepSeconds, List<File> files) throws IOException
+    {
+        Map<Integer, MappingCache.MapMeta> mapping = null;
+        // Bars keyed by their own timestamp; polls within one bucket return the same bar
+        TreeMap<Long, byte[]> bars = new TreeMap<>();
+        WikiDecoder.AggregateColumns bar = new WikiDecoder.AggregateColumns();
+        for (File f : files)
+        {
+            for (ReplayRecorder.Event e : ReplayRecorder.read(f))
+            {
+                if (e.getKind() != ReplayRecorder.Kind.PAYLOAD) continue;
+                if ("mapping".equals(e.getText()))
+                {
+                    mapping = WikiDecoder.decodeMapping(new ByteArrayInputStream(e.getPayload()));
+                }
+                else if (timestep.equals(e.getText()))
+                {
+                    long ts = WikiDecoder.decodeAggregates(new ByteArrayInputStream(e.getPayload()), bar);
+                    if (ts > 0) bars.put(ts, e.getPayload());
+                }
+            }
+        }
+        if (mapping == null || bars.isEmpty())
+        {
+            throw new IOException("Recordings hold no mapping or no " + timestep + " data");
+        }
+
+        long start = bars.firstKey();
+        try (HistoryFrame.Writer w = writer(out, mapping, stepSeconds, start))
+        {
+            for (Map.Entry<Long, byte[]> e : bars.entrySet())
+            {
+                // Steps the recordings missed are written as bars in which nothing traded
+                long step = (e.getKey() - start) / stepSeconds;
+                bar.clear();
+                while (w.steps() < step)
+                {
+                    w.append(bar);
+                }
+                if (w.steps() == step)
+                {
+                    WikiDecoder.decodeAggregates(new ByteArrayInputStream(e.getValue()), bar);
+                    w.append(bar);
+                }
+            }
+            return w.steps();
+        }
+    }
+
+    private static int fromStore(File out, File dir, long fromSec, long toSec) throws IOException
+    {
+        // The store holds prices only; buy limits still come from the wiki
+        Map<Integer, MappingCache.MapMeta> mapping = WikiDecoder.decodeMapping(new ByteArrayInputStream(get(new OkHttpClient(), "mapping")));
+        PriceStore store = new PriceStore(dir);
+        // Retention long enough that opening never prunes what is being read
+        store.open(Integer.MAX_VALUE, toSec);
+        if (!store.isOpen())
+        {
+            throw new IOException("Cannot open price store " + dir);
+        }
+
+        int stepsPerDay = (int) (PriceStore.DAY_SECONDS / 300);
+        WikiDecoder.AggregateColumns[] day = new WikiDecoder.AggregateColumns[stepsPerDay];
+        for (int i = 0; i < day.length; i++)
+        {
+            day[i] = new WikiDecoder.AggregateColumns();
+        }
+        try (HistoryFrame.Writer w = writer(out, mapping, 300, fromSec))
+        {
+            for (long dayStart = fromSec; dayStart < toSec; dayStart += PriceStore.DAY_SECONDS)
+            {
+                for (WikiDecoder.AggregateColumns bar : day)
+                {
+                    bar.clear();
+                }
+                long start = dayStart;
+                store.scan(dayStart, Math.min(toSec, dayStart + PriceStore.DAY_SECONDS),
+                        (id, ts, lo, hi, lowVol, highVol) -> day[(int) ((ts - start) / 300)].add(id, lo, hi, lowVol, highVol));
+                for (int i = 0; i < day.length && w.steps() < (toSec - fromSec) / 300; i++)
+                {
+                    w.append(day[i]);
+                }
+                System.out.printf("%d steps%n", w.steps());
+            }
+            return w.steps();
+        }
+        finally
+        {
+            store.close();
+        }
+    }
+
+    private static HistoryFrame.Writer writer(File out, Map<Integer, MappingCache.MapMeta> mapping, long stepSeconds, long startSec)
+            throws IOException
+    {
+        int[] ids = new int[mapping.size()];
+        int[] limits = new int[mapping.size()];
+        int n = 0;
+        for (Map.Entry<Integer, MappingCache.MapMeta> e : new TreeMap<>(mapping).entrySet())
+        {
+            ids[n] = e.getKey();
+            limits[n++] = e.getValue().getLimit();
+        }
+        return new HistoryFrame.Writer(out, ids, limits, stepSeconds, startSec);
+    }
+
+    private static byte[] get(OkHttpClient http, String endpoint) throws IOException
+    {
+        Request req = new Request.Builder().url(WikiApi.url(endpoint)).header("User-Agent", WikiApi.USER_AGENT).build();
+        try (Response resp = http.newCall(req).execute())
+        {
+            if (!resp.isSuccessful()) throw new IOException("HTTP " + resp.code());
+            return resp.body().bytes();
+        }
+    }
+}
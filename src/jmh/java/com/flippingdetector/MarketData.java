@@ -0,0 +1,214 @@
+package com.flippingdetector;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+import net.runelite.api.Client;
+import net.runelite.api.GameState;
+import net.runelite.api.GrandExchangeOffer;
+import net.runelite.api.GrandExchangeOfferState;
+
+/**
+ * Deterministic synthetic market data for the benchmarks. Prices, volumes and
+ * limits are drawn from roughly the shapes seen on the live wiki API:
+ * log-uniform prices and volumes, a few common buy limits and small spreads.
+ */
+final class MarketData
+{
+    static final FlippingDetectorConfig DEFAULT_CONFIG = new FlippingDetectorConfig() {};
+    static final long NOW_SEC = 1_700_000_000L;
+    private static final int[] LIMITS = {50, 70, 100, 500, 1000, 5000, 10000, 25000};
+
+    private MarketData() {}
+
+    /**
+     * Item ids are spread out like real ones, so the id index is sparse.
+     */
+    static int itemId(int row)
+    {
+        return 2 + row * 3;
+    }
+
+    static MarketSnapshot snapshot(int items, long seed)
+    {
+        return fill(MarketSnapshot.builder(items), items, new SplittableRandom(seed)).build();
+    }
+
+    /**
+     * Successor of {@code previous} in which about {@code changedFraction} of the
+     * rows have new prices, as after one /latest poll.
+     */
+    static MarketSnapshot next(MarketSnapshot previous, double changedFraction, long seed)
+    {
+        SplittableRandom rnd = new SplittableRandom(seed);
+        MarketSnapshot.Builder b = MarketSnapshot.builder(previous.size());
+        for (int i = 0; i < previous.size(); i++)
+        {
+            long low = previous.latestLow(i);
+            long high = previous.latestHigh(i);
+            long lowTime = previous.lowTime(i);
+            long highTime = previous.highTime(i);
+            if (rnd.nextDouble() < changedFraction)
+            {
+                low = Math.max(1, Math.round(low * (0.98 + rnd.nextDouble() * 0.04)));
+                high = Math.max(low, Math.round(high * (0.98 + rnd.nextDouble() * 0.04)));
+                lowTime = highTime = Math.max(lowTime, highTime) + 60;
+            }
+            b.add(previous.itemId(i), previous.name(i), low, high, previous.dailyVolume(i), previous.buyLimit(i),
+                    previous.volatilityPct(i), lowTime, highTime, previous.lowBand(i), previous.highBand(i), previous.unitsPerHour(i),
+                    previous.hourlyVolume(i));
+        }
+        return b.build(previous);
+    }
+
+    private static MarketSnapshot.Builder fill(MarketSnapshot.Builder b, int items, SplittableRandom rnd)
+    {
+        for (int i = 0; i < items; i++)
+        {
+            long high = logUniform(rnd, 1, 50_000_000);
+            long low = Math.max(1, high - Math.round(high * rnd.nextDouble() * 0.05));
+            int volume = (int) logUniform(rnd, 1, 20_000_000);
+            long lowTime = NOW_SEC - rnd.nextInt(4 * 3600);
+            long highTime = NOW_SEC - rnd.nextInt(4 * 3600);
+            long lowBand = rnd.nextBoolean() ? low : 0;
+            long highBand = lowBand > 0 ? high : 0;
+            b.add(itemId(i), "Item " + i, low, high, volume, LIMITS[rnd.nextInt(LIMITS.length)], rnd.nextDouble() * 30,
+                    lowTime, highTime, lowBand, highBand, FillModel.unitsPerHour(volume, volume / 24, lowTime, highTime, NOW_SEC),
+                    volume / 24);
+        }
+        return b;
+    }
+
+    /**
+     * A /latest payload in the wiki's format for the same kind of items.
+     */
+    static byte[] latestJson(int items, long seed)
+    {
+        SplittableRandom rnd = new SplittableRandom(seed);
+        StringBuilder sb = new StringBuilder(items * 80).append("{\"data\":{");
+        for (int i = 0; i < items; i++)
+        {
+            long high = logUniform(rnd, 1, 50_000_000);
+            long low = Math.max(1, high - Math.round(high * rnd.nextDouble() * 0.05));
+            if (i > 0) sb.append(',');
+            sb.append('"').append(itemId(i)).append("\":{\"high\":").append(high)
+                    .append(",\"highTime\":").append(NOW_SEC - rnd.nextInt(4 * 3600))
+                    .append(",\"low\":").append(low)
+                    .append(",\"lowTime\":");
+            // Some items have never traded on one side
+            if (rnd.nextInt(50) == 0) sb.append("null");
+            else sb.append(NOW_SEC - rnd.nextInt(4 * 3600));
+            sb.append('}');
+        }
+        return sb.append("}}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A /mapping payload for {@code items} items.
+     */
+    static byte[] mappingJson(int items, long seed)
+    {
+        SplittableRandom rnd = new SplittableRandom(seed);
+        StringBuilder sb = new StringBuilder(items * 160).append('[');
+        for (int i = 0; i < items; i++)
+        {
+            if (i > 0) sb.append(',');
+            sb.append("{\"examine\":\"An item.\",\"id\":").append(itemId(i))
+                    .append(",\"members\":").append(rnd.nextBoolean())
+                    .append(",\"lowalch\":").append(rnd.nextInt(100_000))
+                    .append(",\"limit\":").append(LIMITS[rnd.nextInt(LIMITS.length)])
+                    .append(",\"value\":").append(rnd.nextInt(250_000))
+                    .append(",\"highalch\":").append(rnd.nextInt(150_000))
+                    .append(",\"icon\":\"Item_").append(i).append(".png\",\"name\":\"Item ").append(i).append("\"}");
+        }
+        return sb.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A view with a few slots in use and some items bought this window.
+     */
+    static OfferView offers(int items)
+    {
+        int[] active = {itemId(0), itemId(items / 2), itemId(items - 1)};
+        int[] boughtIds = new int[Math.min(items, 32)];
+        int[] boughtQty = new int[boughtIds.length];
+        for (int i = 0; i < boughtIds.length; i++)
+        {
+            boughtIds[i] = itemId(i * (items / boughtIds.length));
+            boughtQty[i] = 40 + i * 10;
+        }
+        return new OfferView(active, boughtIds, boughtQty, active.length);
+    }
+
+    static Client loggedInClient()
+    {
+        return (Client) Proxy.newProxyInstance(Client.class.getClassLoader(), new Class<?>[]{Client.class},
+                (proxy, method, args) -> "getGameState".equals(method.getName()) ? GameState.LOGGED_IN : null);
+    }
+
+    static GrandExchangeOffer offer(int itemId, GrandExchangeOfferState state, int sold, int total, int price)
+    {
+        return new FixedOffer(itemId, state, sold, total, price);
+    }
+
+    private static long logUniform(SplittableRandom rnd, long min, long max)
+    {
+        double lo = Math.log(min), hi = Math.log(max);
+        return Math.max(min, Math.round(Math.exp(lo + rnd.nextDouble() * (hi - lo))));
+    }
+
+    // A plain class rather than a proxy, so reading an offer costs what it does in the client
+    private static final class FixedOffer implements GrandExchangeOffer
+    {
+        private final int itemId;
+        private final GrandExchangeOfferState state;
+        private final int sold;
+        private final int total;
+        private final int price;
+
+        FixedOffer(int itemId, GrandExchangeOfferState state, int sold, int total, int price)
+        {
+            this.itemId = itemId;
+            this.state = state;
+            this.sold = sold;
+            this.total = total;
+            this.price = price;
+        }
+
+        @Override
+        public int getQuantitySold()
+        {
+            return sold;
+        }
+
+        @Override
+        public int getItemId()
+        {
+            return itemId;
+        }
+
+        @Override
+        public int getTotalQuantity()
+        {
+            return total;
+        }
+
+        @Override
+        public int getPrice()
+        {
+            return price;
+        }
+
+        @Override
+        public int getSpent()
+        {
+            return sold * price;
+        }
+
+        @Override
+        public GrandExchangeOfferState getState()
+        {
+            return state;
+        }
+    }
+}
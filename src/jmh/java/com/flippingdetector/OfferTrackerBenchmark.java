@@ -0,0 +1,78 @@
+package com.flippingdetector;
+
+import java.util.concurrent.TimeUnit;
+import net.runelite.api.GrandExchangeOfferState;
+import net.runelite.api.events.GrandExchangeChanged;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * GE events arrive in bursts of one per slot. A "login" burst re-sends
+ * unchanged slots. A "fills" burst advances every slot's partial fill, and each
+ * burst starts new offers once the previous ones complete.
+ * <p>
+ * The tracker is never started, so the journal drops its writes and only the
+ * in-memory path is timed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OfferTrackerBenchmark
+{
+    private static final int SLOTS = FlippingDetectorPlugin.GE_SLOTS;
+    private static final int BURSTS = 512;
+    private static final int OFFER_SIZE = 100;
+
+    @Param({"login", "fills"})
+    String pattern;
+
+    private OfferTracker tracker;
+    private GrandExchangeChanged[] events;
+    private int next;
+
+    @Setup
+    public void setUp()
+    {
+        tracker = new OfferTracker(MarketData.loggedInClient());
+        events = new GrandExchangeChanged[BURSTS * SLOTS];
+        for (int b = 0; b < BURSTS; b++)
+        {
+            for (int slot = 0; slot < SLOTS; slot++)
+            {
+                int itemId = MarketData.itemId(slot * 31 + b / 11);
+                int traded = "login".equals(pattern) ? 40 : (b % 11) * OFFER_SIZE / 10;
+                GrandExchangeOfferState state = traded == OFFER_SIZE ? GrandExchangeOfferState.BOUGHT : GrandExchangeOfferState.BUYING;
+                GrandExchangeChanged ev = new GrandExchangeChanged();
+                ev.setSlot(slot);
+                ev.setOffer(MarketData.offer("login".equals(pattern) ? MarketData.itemId(slot) : itemId, state, traded, OFFER_SIZE, 1000 + slot));
+                events[b * SLOTS + slot] = ev;
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SLOTS)
+    public OfferView burst()
+    {
+        for (int i = 0; i < SLOTS; i++)
+        {
+            tracker.onGEChange(events[next]);
+            next = (next + 1) % events.length;
+        }
+        // A refresh follows each burst
+        return tracker.view();
+    }
+}
@@ -0,0 +1,104 @@
+package com.flippingdetector;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The ranking half of a suggestion refresh: a full rebuild, the incremental
+ * path after a typical poll, and slot allocation over the resulting pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RankingBenchmark
+{
+    private static final long GP = 50_000_000;
+    private static final int SLOTS = 8;
+    private static final int POOL = 64;
+
+    @Param({"4000", "25000", "100000"})
+    int items;
+
+    // Share of rows whose price moved between two polls
+    @Param({"0.02"})
+    double churn;
+
+    private final FlippingDetectorConfig config = MarketData.DEFAULT_CONFIG;
+    private ScoringPipeline pipeline;
+    private SuggestionEngine engine;
+    private OfferView offers;
+    private MarketSnapshot current;
+    private List<FlipCandidate> pool;
+
+    @Setup
+    public void setUp()
+    {
+        // Metrics stay disabled, as in a default install
+        Metrics metrics = new Metrics();
+        pipeline = new ScoringPipeline(config, metrics);
+        engine = new SuggestionEngine(config, pipeline, metrics);
+        offers = MarketData.offers(items);
+        current = MarketData.snapshot(items, 42);
+        pool = engine.top(current, offers, GP, POOL);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        pipeline.stop();
+    }
+
+    @Benchmark
+    public List<FlipCandidate> fullRebuild()
+    {
+        engine.invalidateAll();
+        return engine.top(current, offers, GP, POOL);
+    }
+
+    @Benchmark
+    public List<FlipCandidate> incremental(Poll poll)
+    {
+        List<FlipCandidate> picks = engine.top(poll.next, offers, GP, POOL);
+        current = poll.next;
+        return picks;
+    }
+
+    @Benchmark
+    public List<FlipCandidate> allocate()
+    {
+        return SlotAllocator.allocate(pool, offers, GP, SLOTS, true, ScoreFunction.EXPECTED_PROFIT);
+    }
+
+    /**
+     * Each incremental call needs a successor of the last snapshot the engine saw;
+     * building it is kept out of the measurement.
+     */
+    @State(Scope.Benchmark)
+    public static class Poll
+    {
+        MarketSnapshot next;
+        private long seed;
+
+        @Setup(Level.Invocation)
+        public void nextPoll(RankingBenchmark bench)
+        {
+            next = MarketData.next(bench.current, bench.churn, seed++);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.flippingdetector;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import net.runelite.api.Client;
+import net.runelite.api.GameState;
+import net.runelite.api.GrandExchangeOfferState;
+import net.runelite.api.events.GrandExchangeChanged;
+import okhttp3.OkHttpClient;
+
+/**
+ * Replays recorded sessions through the same services the plugin uses, with
+ * the wiki API replaced by a {@link ReplayServer} on localhost. Runs as fast as
+ * it can unless a speed is given, then prints how the suggestions would have
+ * done and what each stage cost.
+ * <p>
+ * {@code ./gradlew replay -Preplay="session.fdr.gz [more.fdr.gz] [--speed=60] [--gp=50000000] [minMarginPct=2 ...]"}
+ * <p>
+ * Any other {@code key=value} argument overrides the config item of that name.
+ */
+public final class ReplayHarness
+{
+    private static final long DEFAULT_GP = 10_000_000;
+
+    private final FlippingDetectorConfig config;
+    private final double speed;
+    private final long gpOverride;
+
+    private volatile GameState gameState = GameState.LOGGED_IN;
+    private long clockMs;
+
+    private ReplayHarness(FlippingDetectorConfig config, double speed, long gpOverride)
+    {
+        this.config = config;
+        this.speed = speed;
+        this.gpOverride = gpOverride;
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        List<File> files = new ArrayList<>();
+        Map<String, String> overrides = new HashMap<>();
+        double speed = 0;
+        long gp = -1;
+        for (String arg : args)
+        {
+            if (arg.startsWith("--speed="))
+                speed = Double.parseDouble(arg.substring(8));
+            else if (arg.startsWith("--gp="))
+                gp = Long.parseLong(arg.substring(5).replace("_", ""));
+            else if (arg.contains("="))
+                overrides.put(arg.substring(0, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            else
+                files.add(new File(arg));
+        }
+        if (files.isEmpty())
+        {
+            System.err.println("Usage: ReplayHarness <recording.fdr.gz>... [--speed=N] [--gp=N] [configKey=value]...");
+            System.exit(2);
+        }
+
+        List<ReplayRecorder.Event> events = new ArrayList<>();
+        for (File f : files)
+        {
+            events.addAll(ReplayRecorder.read(f));
+        }
+        events.sort(Comparator.comparingLong(ReplayRecorder.Event::getTimeMs));
+        new ReplayHarness(ConfigOverrides.of(overrides), speed, gp).run(events);
+    }
+
+    private void run(List<ReplayRecorder.Event> events) throws IOException, InterruptedException
+    {
+        if (events.stream().noneMatch(e -> e.getKind() == ReplayRecorder.Kind.PAYLOAD && "mapping".equals(e.getText())))
+        {
+            throw new IOException("Recording has no item mapping");
+        }
+
+        Path dir = Files.createTempDirectory("flipping-detector-replay");
+        Metrics metrics = new Metrics();
+        metrics.setEnabled(true);
+        ReplayScorer scorer = new ReplayScorer();
+        Client client = client();
+
+        try (ReplayServer server = new ReplayServer())
+        {
+            for (ReplayRecorder.Event e : events)
+            {
+                if (e.getKind() == ReplayRecorder.Kind.PAYLOAD)
+                    server.add(e.getText(), e.getTimeMs(), e.getPayload());
+            }
+            System.setProperty(WikiApi.BASE_PROPERTY, server.baseUrl());
+
+            OkHttpClient http = new OkHttpClient();
+            ReplayRecorder recorder = new ReplayRecorder();
+            MappingCache mapping = new MappingCache(http, metrics, recorder, dir.resolve("mapping.bin").toFile());
+            HistoryService history = new HistoryService(http, recorder, new PriceStore(dir.resolve("prices").toFile()));
+            PriceService prices = new PriceService(http, config, mapping, history, metrics, recorder);
+            OfferTracker offers = new OfferTracker(client, dir.toFile(), () -> clockMs);
+            ScoringPipeline pipeline = new ScoringPipeline(config, metrics);
+            SuggestionPlanner planner = new SuggestionPlanner(config, new SuggestionEngine(config, pipeline, metrics),
+                    new SuggestionEngine(config, pipeline, metrics), metrics);
+
+            long gp = gpOverride > 0 ? gpOverride : DEFAULT_GP;
+            int snapshots = 0;
+            long started = System.nanoTime();
+            long firstMs = events.get(0).getTimeMs();
+            offers.start();
+            try
+            {
+                for (ReplayRecorder.Event e : events)
+                {
+                    pace(firstMs, e.getTimeMs(), started);
+                    clockMs = e.getTimeMs();
+                    server.setClock(clockMs);
+                    switch (e.getKind())
+                    {
+                        case PAYLOAD:
+                            if (!"latest".equals(e.getText()))
+                                break;
+                            MarketSnapshot snapshot = prices.poll(clockMs);
+                            snapshots++;
+                            scorer.observe(snapshot, clockMs);
+                            OfferView view = offers.view();
+                            int openSlots = Math.max(0, FlippingDetectorPlugin.GE_SLOTS - view.filledSlotCount());
+                            List<FlipCandidate> picks = planner.plan(snapshot, view, gp, openSlots);
+                            scorer.suggest(picks, clockMs);
+                            history.fetchTimeseries(picks.stream().mapToInt(FlipCandidate::getItemId).toArray(), clockMs);
+                            break;
+                        case OFFER:
+                            offers.onGEChange(geChanged(e));
+                            break;
+                        case GAME_STATE:
+                            gameState = GameState.valueOf(e.getText());
+                            break;
+                        case GP:
+                            if (gpOverride <= 0)
+                                gp = e.getGp();
+                            break;
+                    }
+                }
+            }
+            finally
+            {
+                offers.stop();
+                pipeline.stop();
+            }
+            scorer.finish();
+
+            double wallSec = (System.nanoTime() - started) / 1e9;
+            double spanHours = (events.get(events.size() - 1).getTimeMs() - firstMs) / 3_600_000.0;
+            System.out.printf("Replayed %d events, %d snapshots, %.1fh of market in %.1fs (%.0fx, %.1f snapshots/s)%n",
+                    events.size(), snapshots, spanHours, wallSec, spanHours * 3600 / wallSec, snapshots / wallSec);
+            System.out.println(scorer.report());
+            System.out.println(metrics.summary(System.lineSeparator()));
+        }
+        finally
+        {
+            deleteRecursively(dir.toFile());
+        }
+    }
+
+    // Sleeps until the event is due when a speed is set; unpaced otherwise
+    private void pace(long firstMs, long timeMs, long startedNanos) throws InterruptedException
+    {
+        if (speed <= 0)
+        {
+            return;
+        }
+        long dueNanos = startedNanos + (long) (TimeUnit.MILLISECONDS.toNanos(timeMs - firstMs) / speed);
+        long wait = dueNanos - System.nanoTime();
+        if (wait > 0)
+        {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    private Client client()
+    {
+        return (Client) Proxy.newProxyInstance(Client.class.getClassLoader(), new Class<?>[]{Client.class},
+                (proxy, method, args) -> "getGameState".equals(method.getName()) ? gameState : null);
+    }
+
+    private static GrandExchangeChanged geChanged(ReplayRecorder.Event e)
+    {
+        int[] o = e.getOffer();
+        GrandExchangeChanged ev = new GrandExchangeChanged();
+        ev.setSlot(o[0]);
+        ev.setOffer(MarketData.offer(o[1], GrandExchangeOfferState.valueOf(e.getText()), o[2], o[3], o[4]));
+        return ev;
+    }
+
+    private static void deleteRecursively(File f)
+    {
+        File[] children = f.listFiles();
+        if (children != null)
+        {
+            for (File c : children)
+            {
+                deleteRecursively(c);
+            }
+        }
+        f.delete();
+    }
+}
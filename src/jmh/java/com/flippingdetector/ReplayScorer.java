@@ -0,0 +1,129 @@
+package com.flippingdetector;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Scores suggestions against what the market did next. A suggestion counts as
+ * bought once a later trade prints at or below its buy price, and as sold once
+ * a trade after that prints at or above its sell price. Whatever has not sold
+ * within twice its expected fill time, or by the end of the recording, is
+ * marked to the last traded high after tax. The whole quantity is assumed to
+ * fill, so this measures whether the prices were right, not the fill model.
+ */
+final class ReplayScorer
+{
+    private static final double MIN_HORIZON_HOURS = 1;
+
+    // Open suggestions by item; an item already being tracked is not re-suggested
+    private final Map<Integer, Pending> open = new HashMap<>();
+    private final List<Double> fillRatios = new ArrayList<>();
+
+    private int suggested;
+    private int bought;
+    private int sold;
+    private long predicted;
+    private long realised;
+
+    void suggest(List<FlipCandidate> picks, long nowMs)
+    {
+        for (FlipCandidate c : picks)
+        {
+            if (c.getQuantity() <= 0 || open.containsKey(c.getItemId()))
+                continue;
+            open.put(c.getItemId(), new Pending(c, nowMs / 1000));
+            suggested++;
+            predicted += c.getExpectedProfit();
+        }
+    }
+
+    /**
+     * Advances every open suggestion through the trades in {@code s}.
+     */
+    void observe(MarketSnapshot s, long nowMs)
+    {
+        long nowSec = nowMs / 1000;
+        for (Iterator<Pending> it = open.values().iterator(); it.hasNext(); )
+        {
+            Pending p = it.next();
+            int i = s.indexOf(p.c.getItemId());
+            if (i >= 0)
+            {
+                p.lastHigh = s.latestHigh(i);
+                if (p.boughtAt == 0 && s.lowTime(i) > p.since && s.latestLow(i) > 0 && s.latestLow(i) <= p.c.getBuyPrice())
+                {
+                    p.boughtAt = s.lowTime(i);
+                    bought++;
+                }
+                if (p.boughtAt != 0 && s.highTime(i) > p.boughtAt && s.latestHigh(i) >= p.c.getSellPrice())
+                {
+                    sold++;
+                    realised += p.c.getExpectedProfit();
+                    fillRatios.add((s.highTime(i) - p.since) / 3600.0 / p.c.getExpectedFillHours());
+                    it.remove();
+                    continue;
+                }
+            }
+            if (nowSec - p.since > p.horizonSec)
+            {
+                close(p);
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Marks everything still open to market.
+     */
+    void finish()
+    {
+        open.values().forEach(this::close);
+        open.clear();
+    }
+
+    String report()
+    {
+        fillRatios.sort(null);
+        String medianFill = fillRatios.isEmpty() ? "-" : String.format("%.2fx", fillRatios.get(fillRatios.size() / 2));
+        return String.format("suggestions %d, bought %d (%.0f%%), sold %d (%.0f%%)%n"
+                        + "predicted profit %s, realised %s (%.0f%%)%n"
+                        + "median time to sell vs expected fill time %s",
+                suggested, bought, percent(bought, suggested), sold, percent(sold, suggested),
+                PanelController.gp(predicted), PanelController.gp(realised), percent(realised, predicted), medianFill);
+    }
+
+    private void close(Pending p)
+    {
+        if (p.boughtAt == 0 || p.lastHigh <= 0)
+        {
+            return;
+        }
+        long each = p.lastHigh - FillModel.taxEach(p.c.getItemId(), p.lastHigh) - p.c.getBuyPrice();
+        realised += each * p.c.getQuantity();
+    }
+
+    private static double percent(long n, long of)
+    {
+        return of == 0 ? 0 : 100.0 * n / of;
+    }
+
+    private static final class Pending
+    {
+        final FlipCandidate c;
+        final long since;
+        final long horizonSec;
+        long boughtAt;
+        long lastHigh;
+
+        Pending(FlipCandidate c, long since)
+        {
+            this.c = c;
+            this.since = since;
+            double hours = Double.isFinite(c.getExpectedFillHours()) ? c.getExpectedFillHours() : 0;
+            this.horizonSec = (long) (Math.max(MIN_HORIZON_HOURS, 2 * hours) * 3600);
+        }
+    }
+}
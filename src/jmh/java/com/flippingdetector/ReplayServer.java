@@ -0,0 +1,106 @@
+package com.flippingdetector;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Local stand-in for the wiki API serving recorded payloads. Each endpoint
+ * answers with the last payload recorded at or before the replay clock. An
+ * endpoint first recorded later in the session answers with that first
+ * payload, since aggregates are only re-fetched once their TTL has passed and
+ * would otherwise be missing from the start of every replay.
+ * <p>
+ * Recorded payloads carry an ETag naming their recording time and a matching
+ * If-None-Match gets a 304, the way the live API answers conditional polls.
+ */
+final class ReplayServer implements AutoCloseable
+{
+    private static final byte[] EMPTY_AGGREGATES = "{\"data\":{}}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] EMPTY_TIMESERIES = "{\"data\":[]}".getBytes(StandardCharsets.UTF_8);
+
+    private final Map<String, NavigableMap<Long, byte[]>> payloads = new HashMap<>();
+    private final HttpServer server;
+    private volatile long clockMs;
+
+    ReplayServer() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /**
+     * @return base URL to hand to {@link WikiApi}
+     */
+    String baseUrl()
+    {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    void add(String endpoint, long timeMs, byte[] payload)
+    {
+        synchronized (payloads)
+        {
+            payloads.computeIfAbsent(endpoint, e -> new TreeMap<>()).put(timeMs, payload);
+        }
+    }
+
+    void setClock(long timeMs)
+    {
+        clockMs = timeMs;
+    }
+
+    @Override
+    public void close()
+    {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange ex) throws IOException
+    {
+        String query = ex.getRequestURI().getRawQuery();
+        String endpoint = ex.getRequestURI().getPath().substring(1) + (query == null ? "" : "?" + query);
+
+        byte[] body;
+        String etag = null;
+        synchronized (payloads)
+        {
+            NavigableMap<Long, byte[]> recorded = payloads.get(endpoint);
+            Map.Entry<Long, byte[]> e = recorded == null ? null : recorded.floorEntry(clockMs);
+            if (e == null && recorded != null)
+            {
+                e = recorded.firstEntry();
+            }
+            body = e != null ? e.getValue() : endpoint.startsWith("timeseries") ? EMPTY_TIMESERIES : EMPTY_AGGREGATES;
+            if (e != null)
+            {
+                etag = "\"" + e.getKey() + "\"";
+            }
+        }
+
+        try (OutputStream out = ex.getResponseBody())
+        {
+            if (etag != null)
+            {
+                ex.getResponseHeaders().set("ETag", etag);
+                if (etag.equals(ex.getRequestHeaders().getFirst("If-None-Match")))
+                {
+                    ex.sendResponseHeaders(304, -1);
+                    return;
+                }
+            }
+            ex.getResponseHeaders().set("Content-Type", "application/json");
+            ex.sendResponseHeaders(200, body.length);
+            out.write(body);
+        }
+    }
+}
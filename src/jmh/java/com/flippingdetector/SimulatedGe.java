@@ -0,0 +1,337 @@
+package com.flippingdetector;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import lombok.Value;
+
+/**
+ * Trades one configuration over a {@link HistoryFrame}. At every step the
+ * frame is turned into the snapshot the plugin would have seen, the plugin's
+ * own {@link SuggestionPlanner} fills the open slots, and offers fill against
+ * the following bars:
+ * <ul>
+ * <li>a buy fills while the bar's average low is at or below its price, a sell
+ * while the average high is at or above it, each taking
+ * {@link FillModel#MARKET_SHARE} of that side's volume per bar</li>
+ * <li>the GE's 4h buy limit caps what is bought, whatever the config says</li>
+ * <li>a completed buy is listed at the suggested sell price in the same slot</li>
+ * <li>offers open for twice their expected fill time (at least an hour) give up:
+ * a buy is cancelled and whatever it got is listed, a sell is dumped at the
+ * last low</li>
+ * <li>every sale pays GE tax</li>
+ * </ul>
+ * Anything still held at the end is valued at the last low after tax.
+ */
+final class SimulatedGe
+{
+    private static final int SLOTS = FlippingDetectorPlugin.GE_SLOTS;
+    // Same fallback PriceService uses before any history is known
+    private static final double DEFAULT_VOLATILITY_PCT = 10.0;
+    private static final double TIMEOUT_FILL_TIMES = 2;
+    private static final double MIN_TIMEOUT_HOURS = 1;
+
+    private final HistoryFrame frame;
+    private final SuggestionPlanner planner;
+    private final RollingStats stats = new RollingStats();
+    private final BuyLimitWindow window = new BuyLimitWindow();
+    private final Offer[] slots = new Offer[SLOTS];
+    private final int[] indexById;
+
+    // Last traded prices, carried forward between bars the way /latest holds them
+    private final long[] lastLow;
+    private final long[] lastHigh;
+    private final long[] lastLowSec;
+    private final long[] lastHighSec;
+
+    private long cash;
+    private int flips;
+    private int cancelled;
+    private int dumped;
+    private OfferView view = OfferView.EMPTY;
+    private boolean viewDirty = true;
+
+    SimulatedGe(HistoryFrame frame, SuggestionPlanner planner)
+    {
+        this.frame = frame;
+        this.planner = planner;
+        int items = frame.items();
+        int maxId = 0;
+        for (int i = 0; i < items; i++)
+        {
+            maxId = Math.max(maxId, frame.itemId(i));
+        }
+        indexById = new int[maxId + 1];
+        Arrays.fill(indexById, -1);
+        for (int i = 0; i < items; i++)
+        {
+            indexById[frame.itemId(i)] = i;
+        }
+        lastLow = new long[items];
+        lastHigh = new long[items];
+        lastLowSec = new long[items];
+        lastHighSec = new long[items];
+    }
+
+    Result run(long startGp)
+    {
+        cash = startGp;
+        long peak = startGp;
+        double maxDrawdown = 0;
+        MarketSnapshot previous = null;
+
+        for (int step = 0; step < frame.steps(); step++)
+        {
+            // Bars are stamped with their start; everything in one is known at its end
+            long nowSec = frame.timeSec(step) + frame.stepSeconds();
+            long nowMs = nowSec * 1000;
+            observe(step, nowSec);
+            for (int s = 0; s < SLOTS; s++)
+            {
+                if (slots[s] != null)
+                    fill(s, step, nowSec, nowMs);
+            }
+            window.expire(nowMs);
+
+            MarketSnapshot snapshot = snapshot(step, nowSec, previous);
+            previous = snapshot;
+            int open = 0;
+            for (Offer o : slots)
+            {
+                if (o == null) open++;
+            }
+            if (open > 0 && cash > 0)
+            {
+                List<FlipCandidate> picks = planner.plan(snapshot, view(nowMs), cash, open);
+                for (FlipCandidate c : picks)
+                {
+                    place(c, nowSec, nowMs);
+                }
+            }
+
+            long equity = equity();
+            peak = Math.max(peak, equity);
+            maxDrawdown = Math.max(maxDrawdown, peak <= 0 ? 0 : (double) (peak - equity) / peak);
+        }
+
+        long finalGp = equity();
+        double hours = frame.steps() * frame.stepSeconds() / 3600.0;
+        return new Result(finalGp, finalGp - startGp, 100.0 * (finalGp - startGp) / Math.max(1, startGp),
+                hours <= 0 ? 0 : Math.round((finalGp - startGp) / hours), flips, cancelled, dumped, 100 * maxDrawdown);
+    }
+
+    private void observe(int step, long nowSec)
+    {
+        for (int i = 0; i < lastLow.length; i++)
+        {
+            int low = frame.low(step, i);
+            if (low > 0)
+            {
+                lastLow[i] = low;
+                lastLowSec[i] = nowSec;
+            }
+            int high = frame.high(step, i);
+            if (high > 0)
+            {
+                lastHigh[i] = high;
+                lastHighSec[i] = nowSec;
+            }
+        }
+    }
+
+    private MarketSnapshot snapshot(int step, long nowSec, MarketSnapshot previous)
+    {
+        MarketSnapshot.Builder b = MarketSnapshot.builder(lastLow.length);
+        for (int i = 0; i < lastLow.length; i++)
+        {
+            if (lastLow[i] <= 0 || lastHigh[i] <= 0) continue;
+
+            int id = frame.itemId(i);
+            stats.observe(id, lastLow[i], lastHigh[i], lastLowSec[i], lastHighSec[i]);
+            double volatilityPct = frame.volatilityPct(step, i);
+            if (Double.isNaN(volatilityPct))
+            {
+                volatilityPct = stats.volatilityPct(id);
+                if (Double.isNaN(volatilityPct)) volatilityPct = DEFAULT_VOLATILITY_PCT;
+            }
+            int daily = frame.dailyVolume(step, i);
+            int hourly = frame.hourlyVolume(step, i);
+            double unitsPerHour = FillModel.unitsPerHour(daily, hourly, lastLowSec[i], lastHighSec[i], nowSec);
+            b.add(id, "", lastLow[i], lastHigh[i], daily, frame.buyLimit(i), volatilityPct,
+                    lastLowSec[i], lastHighSec[i], stats.lowBand(id), stats.highBand(id), unitsPerHour, hourly);
+        }
+        return b.build(previous);
+    }
+
+    private void place(FlipCandidate c, long nowSec, long nowMs)
+    {
+        int item = c.getItemId() < indexById.length ? indexById[c.getItemId()] : -1;
+        int free = -1;
+        for (int s = 0; s < SLOTS && free < 0; s++)
+        {
+            if (slots[s] == null) free = s;
+        }
+        if (item < 0 || free < 0) return;
+
+        long limitLeft = (long) frame.buyLimit(item) - window.bought(c.getItemId(), nowMs);
+        long qty = Math.min(Math.min(c.getQuantity(), limitLeft), cash / Math.max(1, c.getBuyPrice()));
+        if (qty <= 0) return;
+
+        cash -= qty * c.getBuyPrice();
+        double hours = Double.isFinite(c.getExpectedFillHours()) ? c.getExpectedFillHours() : 0;
+        long timeoutSec = (long) (Math.max(MIN_TIMEOUT_HOURS, TIMEOUT_FILL_TIMES * hours) * 3600);
+        slots[free] = new Offer(item, c.getItemId(), c.getBuyPrice(), c.getSellPrice(), (int) qty, nowSec + timeoutSec, timeoutSec);
+        viewDirty = true;
+    }
+
+    private void fill(int s, int step, long nowSec, long nowMs)
+    {
+        Offer o = slots[s];
+        if (o.buying)
+        {
+            int low = frame.low(step, o.item);
+            if (low > 0 && low <= o.buyPrice)
+            {
+                int n = Math.min(o.quantity - o.done, share(frame.lowVolume(step, o.item)));
+                if (n > 0)
+                {
+                    o.done += n;
+                    window.record(o.itemId, n, nowMs);
+                    viewDirty = true;
+                }
+            }
+            if (o.done == o.quantity || nowSec >= o.deadlineSec)
+            {
+                if (o.done < o.quantity)
+                {
+                    cancelled++;
+                    cash += (long) (o.quantity - o.done) * o.buyPrice;
+                }
+                if (o.done == 0)
+                {
+                    slots[s] = null;
+                }
+                else
+                {
+                    o.buying = false;
+                    o.quantity = o.done;
+                    o.done = 0;
+                    o.deadlineSec = nowSec + o.timeoutSec;
+                }
+                viewDirty = true;
+            }
+            return;
+        }
+
+        int high = frame.high(step, o.item);
+        if (high > 0 && high >= o.sellPrice)
+        {
+            int n = Math.min(o.quantity - o.done, share(frame.highVolume(step, o.item)));
+            o.done += n;
+            cash += n * (o.sellPrice - FillModel.taxEach(o.itemId, o.sellPrice));
+        }
+        if (o.done == o.quantity)
+        {
+            flips++;
+            slots[s] = null;
+            viewDirty = true;
+        }
+        else if (nowSec >= o.deadlineSec)
+        {
+            dumped++;
+            cash += (o.quantity - o.done) * markEach(o);
+            slots[s] = null;
+            viewDirty = true;
+        }
+    }
+
+    private long equity()
+    {
+        long equity = cash;
+        for (Offer o : slots)
+        {
+            if (o == null) continue;
+            if (o.buying)
+                equity += (long) (o.quantity - o.done) * o.buyPrice + o.done * markEach(o);
+            else
+                equity += (o.quantity - o.done) * markEach(o);
+        }
+        return equity;
+    }
+
+    // Held units are worth what an instant sale would fetch
+    private long markEach(Offer o)
+    {
+        long low = lastLow[o.item];
+        return Math.max(0, low - FillModel.taxEach(o.itemId, low));
+    }
+
+    private OfferView view(long nowMs)
+    {
+        Map<Integer, Integer> totals = window.totals();
+        // The window ages every bucket, so any purchase in it means a fresh view
+        if (viewDirty || !totals.isEmpty())
+        {
+            int[] active = new int[SLOTS];
+            int n = 0;
+            for (Offer o : slots)
+            {
+                if (o != null) active[n++] = o.itemId;
+            }
+            int[] boughtIds = new int[totals.size()];
+            int[] boughtQty = new int[totals.size()];
+            int b = 0;
+            for (Map.Entry<Integer, Integer> e : totals.entrySet())
+            {
+                boughtIds[b] = e.getKey();
+                boughtQty[b++] = e.getValue();
+            }
+            view = new OfferView(Arrays.copyOf(active, n), boughtIds, boughtQty, n);
+            viewDirty = false;
+        }
+        return view;
+    }
+
+    private static int share(int volume)
+    {
+        return volume <= 0 ? 0 : Math.max(1, (int) (volume * FillModel.MARKET_SHARE));
+    }
+
+    private static final class Offer
+    {
+        final int item;
+        final int itemId;
+        final long buyPrice;
+        final long sellPrice;
+        final long timeoutSec;
+        boolean buying = true;
+        int quantity;
+        // Units bought while buying, then units sold
+        int done;
+        long deadlineSec;
+
+        Offer(int item, int itemId, long buyPrice, long sellPrice, int quantity, long deadlineSec, long timeoutSec)
+        {
+            this.item = item;
+            this.itemId = itemId;
+            this.buyPrice = buyPrice;
+            this.sellPrice = sellPrice;
+            this.quantity = quantity;
+            this.deadlineSec = deadlineSec;
+            this.timeoutSec = timeoutSec;
+        }
+    }
+
+    @Value
+    static class Result
+    {
+        long finalGp;
+        long profit;
+        double roiPct;
+        long gpPerHour;
+        int flips;
+        int cancelledBuys;
+        int dumpedSells;
+        double maxDrawdownPct;
+    }
+}
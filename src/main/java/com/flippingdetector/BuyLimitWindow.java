@@ -0,0 +1,166 @@
+package com.flippingdetector;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Sliding four-hour buy-limit window per item. Each item keeps a ring of
+ * fixed-width buckets plus a running total; advancing the ring clears only the
+ * buckets that aged out since the last access, so recording and querying are
+ * O(1) amortised. The ring holds one bucket more than the window, so a
+ * purchase leaves it between four hours and four hours plus a bucket after it
+ * was made: this errs on the side of reporting slightly more bought than the
+ * GE does.
+ */
+final class BuyLimitWindow
+{
+    static final long WINDOW_MS = Duration.ofHours(4).toMillis();
+    static final long BUCKET_MS = Duration.ofMinutes(5).toMillis();
+    private static final int BUCKETS = (int) (WINDOW_MS / BUCKET_MS) + 1;
+
+    private final Map<Integer, Ring> rings = new HashMap<>();
+
+    void record(int itemId, int qty, long nowMs)
+    {
+        if (qty <= 0) return;
+        long bucket = nowMs / BUCKET_MS;
+        Ring r = rings.computeIfAbsent(itemId, id -> new Ring(bucket));
+        r.advance(bucket);
+        // Older than anything the ring still holds; its slot belongs to a newer bucket
+        if (bucket <= r.head - BUCKETS) return;
+        int slot = (int) Math.floorMod(bucket, (long) BUCKETS);
+        r.qty[slot] = saturatedAdd(r.qty[slot], qty);
+        r.total = saturatedAdd(r.total, qty);
+    }
+
+    int bought(int itemId, long nowMs)
+    {
+        Ring r = rings.get(itemId);
+        if (r == null) return 0;
+        r.advance(nowMs / BUCKET_MS);
+        return r.total;
+    }
+
+    /**
+     * Ages every ring to {@code nowMs} and drops items with nothing left in the window.
+     */
+    void expire(long nowMs)
+    {
+        long bucket = nowMs / BUCKET_MS;
+        for (Iterator<Ring> it = rings.values().iterator(); it.hasNext(); )
+        {
+            Ring r = it.next();
+            r.advance(bucket);
+            if (r.total == 0) it.remove();
+        }
+    }
+
+    /**
+     * Items with purchases in the window as of the last {@link #expire}; totals are not re-aged.
+     */
+    Map<Integer, Integer> totals()
+    {
+        Map<Integer, Integer> out = new HashMap<>(rings.size() * 2);
+        for (Map.Entry<Integer, Ring> e : rings.entrySet())
+        {
+            if (e.getValue().total > 0) out.put(e.getKey(), e.getValue().total);
+        }
+        return out;
+    }
+
+    void clear()
+    {
+        rings.clear();
+    }
+
+    void write(DataOutput out) throws IOException
+    {
+        out.writeInt(BUCKETS);
+        out.writeInt(rings.size());
+        for (Map.Entry<Integer, Ring> e : rings.entrySet())
+        {
+            Ring r = e.getValue();
+            out.writeInt(e.getKey());
+            out.writeLong(r.head);
+            for (int q : r.qty)
+            {
+                out.writeInt(q);
+            }
+        }
+    }
+
+    void read(DataInput in) throws IOException
+    {
+        read(in, in.readInt());
+    }
+
+    /**
+     * Reads rings of {@code buckets} slots each without the leading count, as
+     * written before the ring size was stored.
+     */
+    void read(DataInput in, int buckets) throws IOException
+    {
+        rings.clear();
+        int n = in.readInt();
+        for (int i = 0; i < n; i++)
+        {
+            int itemId = in.readInt();
+            Ring r = new Ring(in.readLong());
+            for (int k = 0; k < buckets; k++)
+            {
+                int q = in.readInt();
+                // Slot k held the bucket within the last `buckets` that maps to it
+                long bucket = r.head - Math.floorMod(r.head - k, (long) buckets);
+                if (r.head - bucket >= BUCKETS) continue;
+                int slot = (int) Math.floorMod(bucket, (long) BUCKETS);
+                r.qty[slot] = q;
+                r.total = saturatedAdd(r.total, q);
+            }
+            rings.put(itemId, r);
+        }
+    }
+
+    private static int saturatedAdd(int a, int b)
+    {
+        long s = (long) a + b;
+        return s > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) s;
+    }
+
+    private static final class Ring
+    {
+        final int[] qty = new int[BUCKETS];
+        long head; // newest bucket index covered by the ring
+        int total;
+
+        Ring(long head)
+        {
+            this.head = head;
+        }
+
+        void advance(long bucket)
+        {
+            if (bucket <= head) return;
+            if (bucket - head >= BUCKETS)
+            {
+                Arrays.fill(qty, 0);
+                total = 0;
+            }
+            else
+            {
+                for (long b = head + 1; b <= bucket; b++)
+                {
+                    int slot = (int) Math.floorMod(b, (long) BUCKETS);
+                    total -= qty[slot];
+                    qty[slot] = 0;
+                }
+            }
+            head = bucket;
+        }
+    }
+}
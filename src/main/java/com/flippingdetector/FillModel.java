@@ -0,0 +1,87 @@
+package com.flippingdetector;
+
+/**
+ * Rough liquidity model: how fast an item trades, how long a flip of a given
+ * size takes to fill both ways, and what the GE keeps as tax.
+ */
+final class FillModel
+{
+    // Share of each side's volume we expect to capture against other traders
+    static final double MARKET_SHARE = 0.25;
+    static final double MIN_FILL_HOURS = 1.0 / 60;
+    // Trades this recent count as fresh; beyond it, staleness slows the rate
+    private static final long FRESH_SECONDS = 15 * 60;
+    // Staleness assumed when either last-trade time is missing
+    private static final double UNKNOWN_STALENESS_HOURS = 24;
+
+    static final long TAX_CAP = 5_000_000;
+    private static final int OLD_SCHOOL_BOND = 13190;
+
+    private FillModel() {}
+
+    /**
+     * Estimated units traded per hour across both sides. Volume sets the base
+     * rate. The older side's last trade then discounts it, so an item whose low
+     * or high has not traded in hours is treated as thin even if its daily figure
+     * looks healthy. The result is quantised to quarter powers of two so it only
+     * moves, and marks the item as changed, when the estimate shifts by ~19% or more.
+     *
+     * @param hourlyVolume units over the last hour, or -1 if unknown
+     * @param nowSec       epoch seconds the trade times are compared against
+     */
+    static double unitsPerHour(int dailyVolume, int hourlyVolume, long lowTime, long highTime, long nowSec)
+    {
+        double rate = Math.max(0, dailyVolume) / 24.0;
+        if (hourlyVolume >= 0)
+        {
+            // The last hour alone is noisy; blend it with the daily average
+            rate = (rate + hourlyVolume) / 2;
+        }
+        if (rate <= 0) return 0;
+
+        double stalenessHours = lowTime <= 0 || highTime <= 0 ? UNKNOWN_STALENESS_HOURS
+                : Math.max(0, nowSec - Math.min(lowTime, highTime) - FRESH_SECONDS) / 3600.0;
+        // Quantise staleness to powers of two hours so it does not drift every poll
+        if (stalenessHours > 0)
+        {
+            stalenessHours = Math.pow(2, Math.floor(Math.log(stalenessHours) / Math.log(2)));
+        }
+        rate /= 1 + stalenessHours;
+
+        double steps = Math.rint(4 * Math.log(rate) / Math.log(2));
+        return Math.pow(2, steps / 4);
+    }
+
+    /**
+     * Hours for one side to fill {@code quantity}, taking {@link #MARKET_SHARE}
+     * of that side's half of the volume.
+     */
+    static double sideFillHours(int quantity, double unitsPerHour)
+    {
+        if (quantity <= 0) return 0;
+        if (unitsPerHour <= 0) return Double.POSITIVE_INFINITY;
+        return Math.max(MIN_FILL_HOURS, quantity / (unitsPerHour / 2 * MARKET_SHARE));
+    }
+
+    /**
+     * Hours to buy {@code quantity} and sell it again, each side taking half the
+     * volume and us taking {@link #MARKET_SHARE} of that.
+     */
+    static double fillHours(int quantity, double unitsPerHour)
+    {
+        if (quantity <= 0) return 0;
+        if (unitsPerHour <= 0) return Double.POSITIVE_INFINITY;
+        double perSide = unitsPerHour / 2 * MARKET_SHARE;
+        return Math.max(MIN_FILL_HOURS, 2 * quantity / perSide);
+    }
+
+    /**
+     * GE tax on selling one unit at {@code sellPrice}: 2% rounded down, capped at
+     * 5M. Anything under 50gp and bonds pay nothing.
+     */
+    static long taxEach(int itemId, long sellPrice)
+    {
+        if (itemId == OLD_SCHOOL_BOND) return 0;
+        return Math.min(TAX_CAP, Math.max(0, sellPrice) / 50);
+    }
+}
@@ -1,34 +1,49 @@
 package com.flippingdetector;
 
-import java.util.Objects;
-
 final class Filters
 {
-    static boolean passes(ItemInfo info, FlippingDetectorConfig cfg, OfferTracker tracker)
+    static boolean passes(ItemInfo info, FlippingDetectorConfig cfg, OfferView offers)
     {
         if (info == null) return false;
-        if (info.latestHigh() <= 0 || info.latestLow() <= 0) return false;
+        return passes(info.itemId(), info.latestLow(), info.latestHigh(), info.dailyVolume(), info.buyLimit(),
+                info.volatilityPct(), cfg, offers);
+    }
+
+    /**
+     * Same checks as {@link #passes(ItemInfo, FlippingDetectorConfig, OfferView)}
+     * read straight from the snapshot columns, without materialising the row.
+     */
+    static boolean passes(MarketSnapshot s, int i, FlippingDetectorConfig cfg, OfferView offers)
+    {
+        return passes(s.itemId(i), s.latestLow(i), s.latestHigh(i), s.dailyVolume(i), s.buyLimit(i),
+                s.volatilityPct(i), cfg, offers);
+    }
+
+    private static boolean passes(int itemId, long low, long high, int dailyVolume, int buyLimit, double volatilityPct,
+                                  FlippingDetectorConfig cfg, OfferView offers)
+    {
+        if (high <= 0 || low <= 0) return false;
 
         // Margin must be positive and above threshold
-        double marginPct = 100.0 * (info.latestHigh() - info.latestLow()) / Math.max(1.0, info.latestHigh());
+        double marginPct = 100.0 * (high - low) / Math.max(1.0, high);
         if (marginPct < cfg.minMarginPct()) return false;
 
         // Daily volume threshold
-        if (cfg.excludeLowVolume() && info.dailyVolume() < cfg.minDailyVolume()) return false;
+        if (cfg.excludeLowVolume() && dailyVolume < cfg.minDailyVolume()) return false;
 
         // Volatility filter
-        if (info.volatilityPct() > cfg.maxVolatilityPct()) return false;
+        if (volatilityPct > cfg.maxVolatilityPct()) return false;
 
         // Respect buy limits and your rolling 4h progress
         if (cfg.respectBuyLimits())
         {
-            int boughtInWindow = tracker.boughtInWindow(info.itemId());
-            if (boughtInWindow >= info.buyLimit())
+            int boughtInWindow = offers.boughtInWindow(itemId);
+            if (boughtInWindow >= buyLimit)
                 return false;
         }
 
         // Avoid recommending items already in your active offers
-        if (tracker.isInActiveOffer(info.itemId()))
+        if (offers.isActive(itemId))
             return false;
 
         return true;
@@ -6,20 +6,18 @@ final class FlipMath
 {
     static Optional<FlipCandidate> makeCandidate(ItemInfo info, long perSlotBudget, FlippingDetectorConfig cfg)
     {
-        long buyPrice = info.latestLow();  // assume we buy at current low
-        long sellPrice = info.latestHigh(); // and sell at current high
+        boolean bands = cfg.priceFromBands();
+        long buyPrice = buyPrice(info.latestLow(), info.lowBand(), bands);
+        long sellPrice = sellPrice(info.latestHigh(), info.highBand(), bands);
         if (sellPrice <= buyPrice) return Optional.empty();
 
-        // How many can we afford with this per-slot budget?
-        long qtyAffordable = perSlotBudget > 0 ? Math.max(0, perSlotBudget / Math.max(1, buyPrice)) : 0;
-        if (qtyAffordable <= 0) return Optional.empty();
-
-        // Respect buy limit
-        int qty = (int)Math.min(qtyAffordable, info.buyLimit());
+        int qty = quantity(buyPrice, info.buyLimit(), perSlotBudget);
         if (qty <= 0) return Optional.empty();
 
-        long marginEach = sellPrice - buyPrice;
+        long marginEach = netMargin(info.itemId(), buyPrice, sellPrice);
+        if (marginEach <= 0) return Optional.empty();
         long expectedProfit = marginEach * qty;
+        double fillHours = FillModel.fillHours(qty, info.unitsPerHour());
 
         return Optional.of(new FlipCandidate(
                 info.itemId(),
@@ -30,7 +28,80 @@ final class FlipMath
                 expectedProfit,
                 info.dailyVolume(),
                 info.buyLimit(),
-                info.volatilityPct()
+                info.volatilityPct(),
+                fillHours,
+                gpPerHour(expectedProfit, fillHours)
         ));
     }
+
+    /**
+     * Copy of {@code c} resized to {@code quantity}, with profit and fill time
+     * scaled to match.
+     */
+    static FlipCandidate withQuantity(FlipCandidate c, int quantity)
+    {
+        long expectedProfit = netMargin(c.getItemId(), c.getBuyPrice(), c.getSellPrice()) * quantity;
+        double fillHours = c.getQuantity() > 0
+                ? Math.max(FillModel.MIN_FILL_HOURS, c.getExpectedFillHours() * quantity / c.getQuantity())
+                : c.getExpectedFillHours();
+        return new FlipCandidate(c.getItemId(), c.getName(), c.getBuyPrice(), c.getSellPrice(), quantity, expectedProfit,
+                c.getDailyVolume(), c.getBuyLimit(), c.getVolatilityPct(), fillHours, gpPerHour(expectedProfit, fillHours));
+    }
+
+    /**
+     * Profit per unit after GE tax on the sale.
+     */
+    static long netMargin(int itemId, long buyPrice, long sellPrice)
+    {
+        return sellPrice - FillModel.taxEach(itemId, sellPrice) - buyPrice;
+    }
+
+    /**
+     * Score the candidate for row {@code i} would get, or NaN if {@link #makeCandidate}
+     * would reject it. Allocation-free, so it can run over the whole snapshot.
+     */
+    static double score(MarketSnapshot s, int i, long perSlotBudget, ScoreFunction scoring, boolean priceFromBands)
+    {
+        long buyPrice = buyPrice(s.latestLow(i), s.lowBand(i), priceFromBands);
+        long sellPrice = sellPrice(s.latestHigh(i), s.highBand(i), priceFromBands);
+        if (sellPrice <= buyPrice) return Double.NaN;
+
+        int qty = quantity(buyPrice, s.buyLimit(i), perSlotBudget);
+        if (qty <= 0) return Double.NaN;
+
+        long marginEach = netMargin(s.itemId(i), buyPrice, sellPrice);
+        if (marginEach <= 0) return Double.NaN;
+
+        return scoring.score(buyPrice, qty, marginEach * qty, FillModel.fillHours(qty, s.unitsPerHour(i)));
+    }
+
+    /**
+     * Quantity {@link #makeCandidate} would buy, computed without allocating.
+     */
+    static int quantity(long buyPrice, int buyLimit, long perSlotBudget)
+    {
+        // How many can we afford with this per-slot budget?
+        long qtyAffordable = perSlotBudget > 0 ? Math.max(0, perSlotBudget / Math.max(1, buyPrice)) : 0;
+        if (qtyAffordable <= 0) return 0;
+
+        // Respect buy limit
+        return (int)Math.min(qtyAffordable, buyLimit);
+    }
+
+    private static long gpPerHour(long expectedProfit, double fillHours)
+    {
+        return Double.isInfinite(fillHours) ? 0 : Math.round(expectedProfit / fillHours);
+    }
+
+    // With bands, buy at the higher and sell at the lower of latest and typical price,
+    // so a dip or spike in the latest trade narrows the margin instead of inflating it
+    private static long buyPrice(long latestLow, long lowBand, boolean useBands)
+    {
+        return useBands && lowBand > 0 ? Math.max(latestLow, lowBand) : latestLow;
+    }
+
+    private static long sellPrice(long latestHigh, long highBand, boolean useBands)
+    {
+        return useBands && highBand > 0 ? Math.min(latestHigh, highBand) : latestHigh;
+    }
 }
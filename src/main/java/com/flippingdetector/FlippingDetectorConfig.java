@@ -10,7 +10,7 @@ public interface FlippingDetectorConfig extends Config
     @ConfigItem(
             keyName = "refreshSeconds",
             name = "Refresh interval (sec)",
-            description = "How often to refresh live margins",
+            description = "How often to refresh live margins; refreshes are spaced out further when the wiki publishes less often",
             position = 1
     )
     default int refreshSeconds() { return 60; }
@@ -70,4 +70,60 @@ public interface FlippingDetectorConfig extends Config
             position = 8
     )
     default int maxCandidates() { return 2000; }
+
+    @ConfigItem(
+            keyName = "rankBy",
+            name = "Rank suggestions by",
+            description = "Score used to order candidates",
+            position = 9
+    )
+    default ScoreFunction rankBy() { return ScoreFunction.EXPECTED_PROFIT; }
+
+    @ConfigItem(
+            keyName = "priceFromBands",
+            name = "Price from typical range",
+            description = "Buy and sell at the recent median low/high instead of the latest trades when those are less favourable",
+            position = 10
+    )
+    default boolean priceFromBands() { return false; }
+
+    @ConfigItem(
+            keyName = "optimizeAllocation",
+            name = "Optimise GP allocation",
+            description = "Split GP across open slots for the best total by the ranking above, instead of an even split",
+            position = 11
+    )
+    default boolean optimizeAllocation() { return true; }
+
+    @ConfigItem(
+            keyName = "debugMetrics",
+            name = "Show debug metrics",
+            description = "Time each refresh stage and show the numbers in the panel and the log",
+            position = 12
+    )
+    default boolean debugMetrics() { return false; }
+
+    @ConfigItem(
+            keyName = "recordSession",
+            name = "Record session for replay",
+            description = "Save price data and GE offer changes under .runelite/flipping-detector/recordings for offline replay",
+            position = 13
+    )
+    default boolean recordSession() { return false; }
+
+    @ConfigItem(
+            keyName = "priceHistoryDays",
+            name = "Days of price history kept",
+            description = "Keep the wiki's 5-minute prices under .runelite/flipping-detector/prices for this many days; 0 keeps none",
+            position = 14
+    )
+    default int priceHistoryDays() { return 30; }
+
+    @ConfigItem(
+            keyName = "watchlist",
+            name = "Watchlist alerts",
+            description = "One rule per line: item name or ID, low/high/margin/volume, < or >, and a value, e.g. \"Abyssal whip margin > 50k\" or \"Cannonball volume > 3x\"",
+            position = 15
+    )
+    default String watchlist() { return ""; }
 }
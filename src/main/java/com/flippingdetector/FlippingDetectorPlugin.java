@@ -1,23 +1,18 @@
 package com.flippingdetector;
 
 import com.google.inject.Provides;
-import com.google.common.collect.ImmutableList;
-import java.time.Duration;
-import java.time.Instant;
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Optional;
 import javax.inject.Inject;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.Client;
-import net.runelite.api.GrandExchangeOffer;
-import net.runelite.api.GrandExchangeOfferState;
+import net.runelite.api.InventoryID;
+import net.runelite.api.events.GameStateChanged;
 import net.runelite.api.events.GrandExchangeChanged;
-import net.runelite.api.events.GameTick;
+import net.runelite.api.events.ItemContainerChanged;
+import net.runelite.client.callback.ClientThread;
 import net.runelite.client.config.ConfigManager;
+import net.runelite.client.events.ConfigChanged;
 import net.runelite.client.eventbus.Subscribe;
 import net.runelite.client.plugins.Plugin;
 import net.runelite.client.plugins.PluginDescriptor;
@@ -38,12 +33,26 @@ public class FlippingDetectorPlugin extends Plugin
     @Inject private FlippingDetectorConfig config;
     @Inject private PriceService priceService;
     @Inject private OfferTracker offerTracker;
+    @Inject private SuggestionPlanner planner;
+    @Inject private ScoringPipeline scoringPipeline;
     @Inject private PanelController panelController;
+    @Inject private RefreshScheduler refreshScheduler;
+    @Inject private Metrics metrics;
+    @Inject private MappingCache mappingCache;
+    @Inject private ReplayRecorder recorder;
+    @Inject private WarmStart warmStart;
+    @Inject private Watchlist watchlist;
 
     @Inject private ClientToolbar clientToolbar;
+    @Inject private ClientThread clientThread;
 
     private NavigationButton navButton;
-    private Instant lastRefresh = Instant.EPOCH;
+    // Written on the client thread, read by the refresh thread
+    private volatile long inventoryCoins;
+    // Last result handed to the panel; replaced whole on the refresh thread, then saved by shutDown
+    private volatile Shown shown;
+    // Last session's snapshot, for naming offers until the first live one
+    private volatile MarketSnapshot warmSnapshot;
 
     @Provides
     FlippingDetectorConfig provideConfig(ConfigManager configManager)
@@ -57,16 +66,56 @@ public class FlippingDetectorPlugin extends Plugin
         panelController.init();
         navButton = panelController.buildNavButton(clientToolbar);
         clientToolbar.addNavigation(navButton);
-        priceService.start();
+        metrics.setEnabled(config.debugMetrics());
+        metrics.startReporting(panelController::showMetrics);
+        planner.invalidateAll();
+        shown = null;
+        WarmStart.State warm = warmStart.load(System.currentTimeMillis());
+        warmSnapshot = warm == null ? null : warm.getSnapshot();
+        if (warm != null)
+        {
+            panelController.showStaleSuggestions(warm.getPicks(), warm.getUserGp(), warm.getOpenSlots(),
+                    System.currentTimeMillis() - warm.getSavedAtMs());
+        }
+        refreshScheduler.start(this::refreshSuggestions);
+        priceService.setSnapshotListener(s ->
+        {
+            refreshScheduler.request(RefreshScheduler.Trigger.SNAPSHOT);
+            clientThread.invokeLater(() -> panelController.updateOffers(offerTracker.currentOffers(), s, true));
+            watchlist.onSnapshot(s);
+        });
+        panelController.onGpOverrideChanged(() -> refreshScheduler.request(RefreshScheduler.Trigger.GP));
+        if (config.recordSession())
+        {
+            recorder.start(mappingCache.cached(), client.getGameState());
+        }
         offerTracker.start();
+        // Offers are only read on the client thread; queued before the first poll can queue a live update
+        MarketSnapshot stale = warmSnapshot;
+        clientThread.invokeLater(() -> panelController.updateOffers(offerTracker.currentOffers(), stale, false));
+        priceService.start();
+        // No container event fires for an inventory that is already loaded
+        clientThread.invokeLater(this::updateInventoryCoins);
         log.info("GE Flipper started");
     }
 
     @Override
     protected void shutDown() throws Exception
     {
+        priceService.setSnapshotListener(null);
         priceService.stop();
+        refreshScheduler.stop();
+        Shown last = shown;
+        if (last != null)
+        {
+            warmStart.save(last.getSnapshot(), last.getPicks(), last.getGp(), last.getSlots(), System.currentTimeMillis());
+        }
+        recorder.stop();
+        metrics.stopReporting();
+        metrics.setEnabled(false);
+        panelController.showMetrics(null);
         offerTracker.stop();
+        scoringPipeline.stop();
         if (navButton != null)
         {
             clientToolbar.removeNavigation(navButton);
@@ -75,30 +124,83 @@ public class FlippingDetectorPlugin extends Plugin
     }
 
     @Subscribe
-    public void onGameTick(GameTick tick)
+    public void onGrandExchangeChanged(GrandExchangeChanged ev)
+    {
+        recorder.offer(ev.getSlot(), ev.getOffer());
+        offerTracker.onGEChange(ev);
+        MarketSnapshot snapshot = priceService.getSnapshot();
+        panelController.updateOffers(offerTracker.currentOffers(), snapshot != null ? snapshot : warmSnapshot, snapshot != null);
+        refreshScheduler.request(RefreshScheduler.Trigger.OFFERS);
+    }
+
+    @Subscribe
+    public void onGameStateChanged(GameStateChanged ev)
     {
-        int refreshSec = Math.max(15, config.refreshSeconds());
-        if (Duration.between(lastRefresh, Instant.now()).getSeconds() >= refreshSec)
+        recorder.gameState(ev.getGameState());
+    }
+
+    @Subscribe
+    public void onItemContainerChanged(ItemContainerChanged ev)
+    {
+        if (ev.getContainerId() == InventoryID.INVENTORY.getId())
+        {
+            updateInventoryCoins();
+        }
+    }
+
+    private void updateInventoryCoins()
+    {
+        long coins = priceService.estimateInventoryCoins(client).orElse(0L);
+        if (coins != inventoryCoins)
         {
-            refreshSuggestions();
-            lastRefresh = Instant.now();
+            inventoryCoins = coins;
+            refreshScheduler.request(RefreshScheduler.Trigger.GP);
         }
     }
 
     @Subscribe
-    public void onGrandExchangeChanged(GrandExchangeChanged ev)
+    public void onConfigChanged(ConfigChanged ev)
     {
-        offerTracker.onGEChange(ev);
-        panelController.updateOffers(offerTracker.currentOffers());
-        // Mark suggestion list stale so we re-evaluate next tick
-        lastRefresh = Instant.EPOCH;
+        if (!"flippingdetector".equals(ev.getGroup()))
+        {
+            return;
+        }
+
+        if ("debugMetrics".equals(ev.getKey()))
+        {
+            metrics.setEnabled(config.debugMetrics());
+            if (!config.debugMetrics())
+            {
+                panelController.showMetrics(null);
+            }
+            return;
+        }
+        if ("watchlist".equals(ev.getKey()))
+        {
+            // Rules are recompiled with the next snapshot
+            return;
+        }
+        if ("recordSession".equals(ev.getKey()))
+        {
+            if (config.recordSession())
+            {
+                recorder.start(mappingCache.cached(), client.getGameState());
+            }
+            else
+            {
+                recorder.stop();
+            }
+            return;
+        }
+        refreshScheduler.request(RefreshScheduler.Trigger.CONFIG);
     }
 
+    // Runs on the refresh thread
     private void refreshSuggestions()
     {
         try
         {
-            // Pull fresh snapshot
+            // Read the last published snapshot
             MarketSnapshot snapshot = priceService.getSnapshot();
             if (snapshot == null)
             {
@@ -109,46 +211,52 @@ public class FlippingDetectorPlugin extends Plugin
             long userGp = panelController.getManualGpOverride().orElse(0L);
             if (userGp <= 0)
             {
-                userGp = priceService.estimateInventoryCoins(client).orElse(0L);
+                userGp = inventoryCoins;
             }
+            recorder.gp(userGp);
+
+            // One immutable view of the offers for the whole refresh
+            OfferView offers = offerTracker.view();
 
             // Compute open slots
-            int openSlots = GE_SLOTS - offerTracker.filledSlotCount();
+            int openSlots = GE_SLOTS - offers.filledSlotCount();
             openSlots = Math.max(0, Math.min(GE_SLOTS, openSlots));
             if (openSlots == 0)
             {
-                panelController.showSuggestions(List.of(), userGp, 0);
+                show(List.of(), userGp, 0, snapshot);
                 return;
             }
 
-            long perSlotBudget = config.evenlyAllocate() && userGp > 0 ? userGp / openSlots : userGp;
-
-            // Filter and rank candidates
-            List<FlipCandidate> candidates = new ArrayList<>();
-            for (ItemInfo info : snapshot.items())
-            {
-                if (!Filters.passes(info, config, offerTracker))
-                    continue;
-                Optional<FlipCandidate> cand = FlipMath.makeCandidate(info, perSlotBudget, config);
-                cand.ifPresent(candidates::add);
-            }
-
-            // Sort by expected profit per slot (descending)
-            candidates.sort(Comparator.comparing(FlipCandidate::expectedProfit).reversed());
-
-            // Take top 'openSlots' unique items
-            List<FlipCandidate> picks = new ArrayList<>();
-            for (FlipCandidate c : candidates)
-            {
-                if (picks.size() >= openSlots) break;
-                picks.add(c);
-            }
-
-            panelController.showSuggestions(picks, userGp, openSlots);
+            List<FlipCandidate> picks = planner.plan(snapshot, offers, userGp, openSlots);
+            // Volatility history is only pulled for what we actually suggest
+            priceService.requestHistory(picks.stream().mapToInt(FlipCandidate::getItemId).toArray());
+            show(picks, userGp, openSlots, snapshot);
+            warmSnapshot = null;
+            warmStart.saveIfDue(snapshot, picks, userGp, openSlots, System.currentTimeMillis());
         }
         catch (Exception e)
         {
             log.warn("Failed to refresh suggestions", e);
         }
     }
+
+    private void show(List<FlipCandidate> picks, long userGp, int openSlots, MarketSnapshot snapshot)
+    {
+        Shown last = shown;
+        shown = new Shown(picks, userGp, openSlots, snapshot);
+        if (last != null && picks.equals(last.getPicks()) && userGp == last.getGp() && openSlots == last.getSlots())
+        {
+            return;
+        }
+        panelController.showSuggestions(picks, userGp, openSlots);
+    }
+
+    @Value
+    private static class Shown
+    {
+        List<FlipCandidate> picks;
+        long gp;
+        int slots;
+        MarketSnapshot snapshot;
+    }
 }
@@ -0,0 +1,331 @@
+package com.flippingdetector;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Volume and volatility from the wiki's aggregate endpoints. /24h and /1h give
+ * traded volume for every item; price history is only kept for items that were
+ * shortlisted, seeded lazily from /timeseries and then extended one point per
+ * /5m poll. Each endpoint has its own TTL so the wiki is not hit every refresh.
+ * <p>
+ * While the {@link PriceStore} is open every /5m bar is kept on disk, and
+ * history for a newly shortlisted item is read from there before /timeseries
+ * is asked for it.
+ * <p>
+ * Not thread-safe: owned by the price thread.
+ */
+@Slf4j
+@Singleton
+class HistoryService
+{
+    private static final long DAY_TTL_MS = Duration.ofMinutes(30).toMillis();
+    private static final long HOUR_TTL_MS = Duration.ofMinutes(5).toMillis();
+    private static final long FIVE_MIN_TTL_MS = Duration.ofMinutes(5).toMillis();
+    private static final long TIMESERIES_TTL_MS = Duration.ofHours(1).toMillis();
+    private static final int MAX_TIMESERIES_PER_BATCH = 8;
+
+    static final int SAMPLES = 288; // 24h of 5m points
+    private static final int MIN_SAMPLES = 12;
+    private static final int MAX_SERIES = 2048;
+
+    private final OkHttpClient http;
+    private final ReplayRecorder recorder;
+    private final PriceStore store;
+    private final WikiDecoder.AggregateColumns agg = new WikiDecoder.AggregateColumns();
+
+    // Indexed by item id; -1 when the item was not in the last payload
+    private int[] dailyVolume = new int[0];
+    private int[] hourlyVolume = new int[0];
+    private long dayFetchedAt;
+    private long hourFetchedAt;
+    private long fiveMinFetchedAt;
+    private long version;
+
+    // Least recently shortlisted first; only a shortlist request counts as a use
+    private final Map<Integer, PriceSeries> series = new LinkedHashMap<Integer, PriceSeries>(256)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, PriceSeries> eldest)
+        {
+            return size() > MAX_SERIES;
+        }
+    };
+
+    @Inject
+    HistoryService(OkHttpClient http, ReplayRecorder recorder, PriceStore store)
+    {
+        this.http = http;
+        this.recorder = recorder;
+        this.store = store;
+    }
+
+    /**
+     * Opens the local price store, keeping {@code retentionDays} of bars; 0
+     * leaves it closed.
+     */
+    void openStore(int retentionDays, long nowMs)
+    {
+        if (retentionDays > 0)
+        {
+            store.open(retentionDays, nowMs / 1000);
+        }
+    }
+
+    void closeStore()
+    {
+        store.close();
+    }
+
+    /**
+     * Refreshes whichever aggregates have outlived their TTL. Failures keep the
+     * previous values.
+     */
+    void refresh(long nowMs)
+    {
+        if (nowMs - dayFetchedAt >= DAY_TTL_MS)
+        {
+            int[] v = fetchVolumes("24h");
+            if (v != null)
+            {
+                dailyVolume = v;
+                dayFetchedAt = nowMs;
+                version++;
+            }
+        }
+        if (nowMs - hourFetchedAt >= HOUR_TTL_MS)
+        {
+            int[] v = fetchVolumes("1h");
+            if (v != null)
+            {
+                hourlyVolume = v;
+                hourFetchedAt = nowMs;
+                version++;
+            }
+        }
+        if (nowMs - fiveMinFetchedAt >= FIVE_MIN_TTL_MS && (!series.isEmpty() || store.isOpen()))
+        {
+            try
+            {
+                long ts = fetch("5m");
+                store.append(ts, agg);
+                for (int i = 0; i < agg.size; i++)
+                {
+                    PriceSeries s = series.get(agg.ids[i]);
+                    if (s != null)
+                    {
+                        s.push(ts, midpoint(agg.avgLow[i], agg.avgHigh[i]));
+                    }
+                }
+                fiveMinFetchedAt = nowMs;
+                version++;
+            }
+            catch (IOException e)
+            {
+                log.warn("Failed to fetch 5m prices", e);
+            }
+        }
+    }
+
+    /**
+     * Seeds price history for shortlisted items, from the local store where it
+     * holds enough and otherwise from /timeseries for up to a handful of items.
+     * A held series is left alone while /5m keeps it current, and a seed is
+     * not retried within the TTL of the last attempt.
+     */
+    void fetchTimeseries(int[] itemIds, long nowMs)
+    {
+        int fetched = 0;
+        for (int itemId : itemIds)
+        {
+            PriceSeries held = series.remove(itemId);
+            if (held != null)
+            {
+                series.put(itemId, held);
+                if (held.isCurrent(nowMs) || nowMs - held.seededAtMs < TIMESERIES_TTL_MS) continue;
+            }
+
+            if (seedFromStore(itemId, nowMs))
+            {
+                version++;
+                continue;
+            }
+            if (fetched >= MAX_TIMESERIES_PER_BATCH) continue;
+
+            // Held empty until the fetch succeeds, so a failure waits out the TTL; /5m fills it meanwhile
+            series.put(itemId, new PriceSeries(nowMs));
+            fetched++;
+            String endpoint = "timeseries?timestep=5m&id=" + itemId;
+            Request req = new Request.Builder().url(WikiApi.url(endpoint)).header("User-Agent", WikiApi.USER_AGENT).build();
+            try (Response resp = http.newCall(req).execute())
+            {
+                if (!resp.isSuccessful()) throw new IOException("HTTP " + resp.code());
+                PriceSeries s = new PriceSeries(nowMs);
+                WikiDecoder.decodeTimeseries(recorder.body(endpoint, resp.body()), (ts, lo, hi, vol) -> s.push(ts, midpoint(lo, hi)));
+                series.put(itemId, s);
+                version++;
+            }
+            catch (IOException e)
+            {
+                log.warn("Failed to fetch timeseries for {}", itemId, e);
+            }
+        }
+    }
+
+    /**
+     * @return a count that moves whenever volumes or any price history change
+     */
+    long version()
+    {
+        return version;
+    }
+
+    /**
+     * @return units traded over the last 24h, or -1 if unknown
+     */
+    int dailyVolume(int itemId)
+    {
+        return itemId >= 0 && itemId < dailyVolume.length ? dailyVolume[itemId] : -1;
+    }
+
+    /**
+     * @return units traded over the last hour, or -1 if unknown
+     */
+    int hourlyVolume(int itemId)
+    {
+        return itemId >= 0 && itemId < hourlyVolume.length ? hourlyVolume[itemId] : -1;
+    }
+
+    /**
+     * @return standard deviation of the 5m midpoints as a percentage of their
+     *         mean, or NaN until enough history is held for the item
+     */
+    double volatilityPct(int itemId)
+    {
+        PriceSeries s = series.get(itemId);
+        return s == null || s.count < MIN_SAMPLES ? Double.NaN : s.volatilityPct();
+    }
+
+    private boolean seedFromStore(int itemId, long nowMs)
+    {
+        if (!store.isOpen()) return false;
+        long nowSec = nowMs / 1000;
+        PriceSeries s = new PriceSeries(nowMs);
+        store.range(itemId, nowSec - SAMPLES * 300L, nowSec + 1, (ts, lo, hi, lowVol, highVol) -> s.push(ts, midpoint(lo, hi)));
+        if (s.count < MIN_SAMPLES) return false;
+        series.put(itemId, s);
+        return true;
+    }
+
+    private int[] fetchVolumes(String endpoint)
+    {
+        try
+        {
+            fetch(endpoint);
+        }
+        catch (IOException e)
+        {
+            log.warn("Failed to fetch {} prices", endpoint, e);
+            return null;
+        }
+
+        int maxId = 0;
+        for (int i = 0; i < agg.size; i++)
+        {
+            maxId = Math.max(maxId, agg.ids[i]);
+        }
+        int[] v = new int[maxId + 1];
+        Arrays.fill(v, -1);
+        for (int i = 0; i < agg.size; i++)
+        {
+            v[agg.ids[i]] = agg.lowVolume[i] + agg.highVolume[i];
+        }
+        return v;
+    }
+
+    private long fetch(String endpoint) throws IOException
+    {
+        Request req = new Request.Builder().url(WikiApi.url(endpoint)).header("User-Agent", WikiApi.USER_AGENT).build();
+        try (Response resp = http.newCall(req).execute())
+        {
+            if (!resp.isSuccessful()) throw new IOException("HTTP " + resp.code());
+            return WikiDecoder.decodeAggregates(recorder.body(endpoint, resp.body()), agg);
+        }
+    }
+
+    private static double midpoint(long low, long high)
+    {
+        if (low <= 0) return high;
+        if (high <= 0) return low;
+        return (low + high) / 2.0;
+    }
+
+    /**
+     * Fixed-size ring of midpoints with running sums, so the rolling standard
+     * deviation updates in O(1) per point. Values are stored relative to the
+     * first point seen to keep the sum of squares well conditioned.
+     */
+    static final class PriceSeries
+    {
+        // When this series was seeded or a seed was last attempted
+        private final long seededAtMs;
+        private final double[] values = new double[SAMPLES];
+        private int head;
+        private int count;
+        private long lastTimestamp;
+        private double shift = Double.NaN;
+        private double sum;
+        private double sumSq;
+
+        PriceSeries(long seededAtMs)
+        {
+            this.seededAtMs = seededAtMs;
+        }
+
+        // Enough points, the newest within the TTL: /5m is extending it
+        boolean isCurrent(long nowMs)
+        {
+            return count >= MIN_SAMPLES && nowMs / 1000 - lastTimestamp < TIMESERIES_TTL_MS / 1000;
+        }
+
+        void push(long timestamp, double value)
+        {
+            if (value <= 0 || timestamp <= lastTimestamp) return;
+            lastTimestamp = timestamp;
+            if (Double.isNaN(shift)) shift = value;
+
+            double x = value - shift;
+            if (count == SAMPLES)
+            {
+                double old = values[head];
+                sum -= old;
+                sumSq -= old * old;
+            }
+            else
+            {
+                count++;
+            }
+            values[head] = x;
+            sum += x;
+            sumSq += x * x;
+            head = (head + 1) % SAMPLES;
+        }
+
+        double volatilityPct()
+        {
+            if (count < 2) return Double.NaN;
+            double mean = sum / count;
+            double variance = Math.max(0, (sumSq - sum * mean) / (count - 1));
+            return 100.0 * Math.sqrt(variance) / Math.max(1.0, mean + shift);
+        }
+    }
+}
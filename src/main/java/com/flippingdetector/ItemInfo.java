@@ -12,10 +12,18 @@ class ItemInfo
     int dailyVolume;
     int buyLimit;
     double volatilityPct;
+    long lowBand;
+    long highBand;
+    double unitsPerHour;
 
+    int itemId() { return itemId; }
+    String name() { return name; }
     long latestLow() { return latestLow; }
     long latestHigh() { return latestHigh; }
     int dailyVolume() { return dailyVolume; }
     int buyLimit() { return buyLimit; }
     double volatilityPct() { return volatilityPct; }
+    long lowBand() { return lowBand; }
+    long highBand() { return highBand; }
+    double unitsPerHour() { return unitsPerHour; }
 }
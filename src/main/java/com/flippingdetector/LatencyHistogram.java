@@ -0,0 +1,100 @@
+package com.flippingdetector;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free log-linear histogram of nanosecond durations, in the style of
+ * HdrHistogram. Each power of two is split into {@code 2^SUB_BITS} linear
+ * buckets, so any recorded value is reported within 12.5% of itself. Values up
+ * to about 18 minutes are tracked and anything longer lands in the last bucket.
+ */
+final class LatencyHistogram
+{
+    private static final int SUB_BITS = 3;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int MAX_EXP = 40;
+    private static final int BUCKETS = (MAX_EXP - SUB_BITS + 1) * SUB;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    void record(long nanos)
+    {
+        long v = Math.max(0, nanos);
+        counts.incrementAndGet(index(v));
+        total.increment();
+        sum.add(v);
+        max.accumulate(v);
+    }
+
+    void reset()
+    {
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            counts.set(i, 0);
+        }
+        total.reset();
+        sum.reset();
+        max.reset();
+    }
+
+    long count()
+    {
+        return total.sum();
+    }
+
+    long meanNanos()
+    {
+        long n = total.sum();
+        return n == 0 ? 0 : sum.sum() / n;
+    }
+
+    long maxNanos()
+    {
+        return max.get();
+    }
+
+    /**
+     * @return lower bound of the bucket holding the {@code q} quantile, or 0 when empty
+     */
+    long quantileNanos(double q)
+    {
+        long n = 0;
+        long[] c = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            c[i] = counts.get(i);
+            n += c[i];
+        }
+        if (n == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(q * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            seen += c[i];
+            if (seen >= rank) return lowerBound(i);
+        }
+        return lowerBound(BUCKETS - 1);
+    }
+
+    private static int index(long v)
+    {
+        if (v < SUB) return (int) v;
+        int exp = 63 - Long.numberOfLeadingZeros(v);
+        int shift = exp - SUB_BITS;
+        int idx = (shift + 1) * SUB + (int) ((v >>> shift) & (SUB - 1));
+        return Math.min(idx, BUCKETS - 1);
+    }
+
+    private static long lowerBound(int idx)
+    {
+        if (idx < SUB) return idx;
+        int shift = idx / SUB - 1;
+        return (long) (SUB + idx % SUB) << shift;
+    }
+}
@@ -0,0 +1,212 @@
+package com.flippingdetector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.RuneLite;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Item names and buy limits from the wiki /mapping endpoint. The table is kept
+ * across refreshes, persisted under the RuneLite directory and only revalidated
+ * (ETag / Last-Modified) once the TTL has passed.
+ */
+@Slf4j
+@Singleton
+class MappingCache
+{
+    private static final File CACHE_FILE = new File(new File(RuneLite.RUNELITE_DIR, "flipping-detector"), "mapping.bin");
+    private static final int FORMAT_VERSION = 1;
+    private static final long TTL_MS = Duration.ofHours(24).toMillis();
+    private static final long RETRY_MS = Duration.ofMinutes(10).toMillis();
+
+    private final OkHttpClient http;
+    private final Metrics metrics;
+    private final ReplayRecorder recorder;
+    private final File cacheFile;
+
+    private volatile Map<Integer, MapMeta> meta = Collections.emptyMap();
+    private String etag;
+    private String lastModified;
+    private long validatedAt;
+    private long nextCheckAt;
+
+    @Inject
+    MappingCache(OkHttpClient http, Metrics metrics, ReplayRecorder recorder)
+    {
+        this(http, metrics, recorder, CACHE_FILE);
+    }
+
+    MappingCache(OkHttpClient http, Metrics metrics, ReplayRecorder recorder, File cacheFile)
+    {
+        this.http = http;
+        this.metrics = metrics;
+        this.recorder = recorder;
+        this.cacheFile = cacheFile;
+    }
+
+    /**
+     * Loads the on-disk copy, if any. Missing or unreadable files just leave the
+     * cache empty so the next {@link #get()} downloads a fresh table.
+     */
+    void load()
+    {
+        if (!cacheFile.isFile())
+        {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile))))
+        {
+            if (in.readInt() != FORMAT_VERSION)
+            {
+                return;
+            }
+            String tag = in.readUTF();
+            String modified = in.readUTF();
+            long validated = in.readLong();
+            int count = in.readInt();
+            Map<Integer, MapMeta> loaded = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++)
+            {
+                int id = in.readInt();
+                int limit = in.readInt();
+                loaded.put(id, new MapMeta(in.readUTF().intern(), limit));
+            }
+
+            synchronized (this)
+            {
+                etag = tag.isEmpty() ? null : tag;
+                lastModified = modified.isEmpty() ? null : modified;
+                validatedAt = validated;
+                nextCheckAt = validated + TTL_MS;
+                meta = loaded;
+            }
+            log.debug("Loaded {} item mappings from {}", count, cacheFile);
+        }
+        catch (IOException e)
+        {
+            log.warn("Failed to read mapping cache", e);
+        }
+    }
+
+    /**
+     * Returns whatever table is held, without revalidating; empty before the
+     * first load or download.
+     */
+    Map<Integer, MapMeta> cached()
+    {
+        return meta;
+    }
+
+    /**
+     * Returns the mapping table, revalidating it against the wiki when the TTL
+     * has expired. When the wiki cannot be reached the local copy is returned.
+     *
+     * @throws IOException if there is no local copy and the download fails
+     */
+    synchronized Map<Integer, MapMeta> get() throws IOException
+    {
+        long now = System.currentTimeMillis();
+        if (!meta.isEmpty() && now < nextCheckAt)
+        {
+            metrics.increment(Metrics.Counter.MAPPING_HITS);
+            return meta;
+        }
+
+        try
+        {
+            revalidate(now);
+        }
+        catch (IOException e)
+        {
+            if (meta.isEmpty())
+            {
+                throw e;
+            }
+            log.warn("Mapping revalidation failed, using cached copy", e);
+            nextCheckAt = now + RETRY_MS;
+        }
+        return meta;
+    }
+
+    private void revalidate(long now) throws IOException
+    {
+        Request.Builder req = new Request.Builder().url(WikiApi.url("mapping")).header("User-Agent", WikiApi.USER_AGENT);
+        if (!meta.isEmpty())
+        {
+            if (etag != null) req.header("If-None-Match", etag);
+            if (lastModified != null) req.header("If-Modified-Since", lastModified);
+        }
+
+        try (Response resp = http.newCall(req.build()).execute())
+        {
+            if (resp.code() == 304)
+            {
+                metrics.increment(Metrics.Counter.MAPPING_HITS);
+                validatedAt = now;
+                nextCheckAt = now + TTL_MS;
+                save();
+                return;
+            }
+            if (!resp.isSuccessful()) throw new IOException("HTTP " + resp.code());
+
+            metrics.increment(Metrics.Counter.MAPPING_MISSES);
+            meta = WikiDecoder.decodeMapping(recorder.body("mapping", resp.body()));
+            etag = resp.header("ETag");
+            lastModified = resp.header("Last-Modified");
+            validatedAt = now;
+            nextCheckAt = now + TTL_MS;
+            save();
+        }
+    }
+
+    private void save()
+    {
+        Map<Integer, MapMeta> m = meta;
+        File tmp = new File(cacheFile.getParentFile(), cacheFile.getName() + ".tmp");
+        try
+        {
+            Files.createDirectories(cacheFile.getParentFile().toPath());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp))))
+            {
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(etag == null ? "" : etag);
+                out.writeUTF(lastModified == null ? "" : lastModified);
+                out.writeLong(validatedAt);
+                out.writeInt(m.size());
+                for (Map.Entry<Integer, MapMeta> e : m.entrySet())
+                {
+                    out.writeInt(e.getKey());
+                    out.writeInt(e.getValue().limit);
+                    out.writeUTF(e.getValue().name);
+                }
+            }
+            Files.move(tmp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            log.warn("Failed to write mapping cache", e);
+        }
+    }
+
+    @Value
+    static class MapMeta { String name; int limit; }
+}
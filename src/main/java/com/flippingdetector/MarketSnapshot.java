@@ -1,10 +1,328 @@
 package com.flippingdetector;
 
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
-import lombok.Value;
+import java.util.concurrent.atomic.AtomicLong;
 
-@Value
-class MarketSnapshot
+/**
+ * Immutable market state stored column-wise: one primitive array per field and
+ * a direct itemId to row index table for O(1) lookups. Rows are addressed by
+ * index; {@link #items()} wraps them as {@link ItemInfo} for older callers.
+ * <p>
+ * Each snapshot carries a sequence number and the ids whose row differs from
+ * the snapshot it was built against, so consumers can update incrementally.
+ */
+final class MarketSnapshot
 {
-    List<ItemInfo> items;
+    private static final int[] NO_CHANGES = new int[0];
+    // Unique per JVM so consumers never mistake a snapshot from before a restart for its successor
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private final long sequence;
+    private final long baseSequence;
+    private final int[] changedIds;
+    private final int size;
+    private final int[] ids;
+    private final String[] names;
+    private final long[] low;
+    private final long[] high;
+    private final int[] volume;
+    private final int[] limit;
+    private final double[] volatility;
+    private final long[] lowTime;
+    private final long[] highTime;
+    private final long[] lowBand;
+    private final long[] highBand;
+    private final double[] unitsPerHour;
+    private final int[] hourlyVolume;
+    private final int[] indexById;
+
+    private MarketSnapshot(Builder b, MarketSnapshot previous)
+    {
+        size = b.size;
+        ids = Arrays.copyOf(b.ids, size);
+        names = Arrays.copyOf(b.names, size);
+        low = Arrays.copyOf(b.low, size);
+        high = Arrays.copyOf(b.high, size);
+        volume = Arrays.copyOf(b.volume, size);
+        limit = Arrays.copyOf(b.limit, size);
+        volatility = Arrays.copyOf(b.volatility, size);
+        lowTime = Arrays.copyOf(b.lowTime, size);
+        highTime = Arrays.copyOf(b.highTime, size);
+        lowBand = Arrays.copyOf(b.lowBand, size);
+        highBand = Arrays.copyOf(b.highBand, size);
+        unitsPerHour = Arrays.copyOf(b.unitsPerHour, size);
+        hourlyVolume = Arrays.copyOf(b.hourlyVolume, size);
+
+        int maxId = -1;
+        for (int i = 0; i < size; i++)
+        {
+            maxId = Math.max(maxId, ids[i]);
+        }
+        indexById = new int[maxId + 1];
+        Arrays.fill(indexById, -1);
+        for (int i = 0; i < size; i++)
+        {
+            indexById[ids[i]] = i;
+        }
+
+        sequence = SEQUENCE.incrementAndGet();
+        if (previous == null)
+        {
+            baseSequence = -1;
+            changedIds = NO_CHANGES;
+        }
+        else
+        {
+            baseSequence = previous.sequence;
+            changedIds = diff(previous);
+        }
+    }
+
+    // Ids that were added, removed or whose row differs from previous
+    private int[] diff(MarketSnapshot previous)
+    {
+        int[] changed = new int[16];
+        int n = 0;
+        for (int i = 0; i < size; i++)
+        {
+            int j = previous.indexOf(ids[i]);
+            if (j >= 0 && sameRow(i, previous, j)) continue;
+            if (n == changed.length) changed = Arrays.copyOf(changed, n * 2);
+            changed[n++] = ids[i];
+        }
+        for (int j = 0; j < previous.size; j++)
+        {
+            if (indexOf(previous.ids[j]) >= 0) continue;
+            if (n == changed.length) changed = Arrays.copyOf(changed, n * 2);
+            changed[n++] = previous.ids[j];
+        }
+        return n == 0 ? NO_CHANGES : Arrays.copyOf(changed, n);
+    }
+
+    private boolean sameRow(int i, MarketSnapshot o, int j)
+    {
+        return low[i] == o.low[j] && high[i] == o.high[j]
+                && lowTime[i] == o.lowTime[j] && highTime[i] == o.highTime[j]
+                && volume[i] == o.volume[j] && limit[i] == o.limit[j]
+                && volatility[i] == o.volatility[j]
+                && lowBand[i] == o.lowBand[j] && highBand[i] == o.highBand[j]
+                && unitsPerHour[i] == o.unitsPerHour[j] && hourlyVolume[i] == o.hourlyVolume[j];
+    }
+
+    static Builder builder(int expectedSize)
+    {
+        return new Builder(expectedSize);
+    }
+
+    long sequence() { return sequence; }
+
+    /**
+     * @return sequence of the snapshot {@link #changedIds()} is relative to, or -1 for none
+     */
+    long baseSequence() { return baseSequence; }
+
+    /**
+     * Ids added, removed or changed since the snapshot at {@link #baseSequence()}.
+     * The returned array is shared and must not be modified.
+     */
+    int[] changedIds() { return changedIds; }
+
+    int size() { return size; }
+    int itemId(int i) { return ids[i]; }
+    String name(int i) { return names[i]; }
+    long latestLow(int i) { return low[i]; }
+    long latestHigh(int i) { return high[i]; }
+    int dailyVolume(int i) { return volume[i]; }
+    int buyLimit(int i) { return limit[i]; }
+    double volatilityPct(int i) { return volatility[i]; }
+    long lowTime(int i) { return lowTime[i]; }
+    long highTime(int i) { return highTime[i]; }
+
+    /**
+     * @return typical recent low price from {@link RollingStats}, or 0 while it is warming up
+     */
+    long lowBand(int i) { return lowBand[i]; }
+
+    /**
+     * @return typical recent high price from {@link RollingStats}, or 0 while it is warming up
+     */
+    long highBand(int i) { return highBand[i]; }
+
+    /**
+     * @return estimated units traded per hour, see {@link FillModel#unitsPerHour}
+     */
+    double unitsPerHour(int i) { return unitsPerHour[i]; }
+
+    /**
+     * @return units traded over the last hour as reported by /1h, or -1 if unknown
+     */
+    int hourlyVolume(int i) { return hourlyVolume[i]; }
+
+    /**
+     * @return the row index of {@code itemId}, or -1 if it is not in this snapshot
+     */
+    int indexOf(int itemId)
+    {
+        return itemId >= 0 && itemId < indexById.length ? indexById[itemId] : -1;
+    }
+
+    ItemInfo item(int i)
+    {
+        return new ItemInfo(ids[i], names[i], low[i], high[i], volume[i], limit[i], volatility[i], lowBand[i], highBand[i],
+                unitsPerHour[i]);
+    }
+
+    /**
+     * @return the item with {@code itemId}, or null if it is not in this snapshot
+     */
+    ItemInfo get(int itemId)
+    {
+        int i = indexOf(itemId);
+        return i < 0 ? null : item(i);
+    }
+
+    /**
+     * Read-only list view; each element is materialised on access.
+     */
+    List<ItemInfo> items()
+    {
+        return new AbstractList<ItemInfo>()
+        {
+            @Override
+            public ItemInfo get(int index)
+            {
+                if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index: " + index);
+                return item(index);
+            }
+
+            @Override
+            public int size()
+            {
+                return size;
+            }
+        };
+    }
+
+    static final class Builder
+    {
+        private int size;
+        private int[] ids;
+        private String[] names;
+        private long[] low;
+        private long[] high;
+        private int[] volume;
+        private int[] limit;
+        private double[] volatility;
+        private long[] lowTime;
+        private long[] highTime;
+        private long[] lowBand;
+        private long[] highBand;
+        private double[] unitsPerHour;
+        private int[] hourlyVolume;
+
+        private Builder(int expectedSize)
+        {
+            int cap = Math.max(16, expectedSize);
+            ids = new int[cap];
+            names = new String[cap];
+            low = new long[cap];
+            high = new long[cap];
+            volume = new int[cap];
+            limit = new int[cap];
+            volatility = new double[cap];
+            lowTime = new long[cap];
+            highTime = new long[cap];
+            lowBand = new long[cap];
+            highBand = new long[cap];
+            unitsPerHour = new double[cap];
+            hourlyVolume = new int[cap];
+        }
+
+        /**
+         * Appends a row. Ids must be non-negative and unique within a snapshot.
+         */
+        Builder add(int itemId, String name, long latestLow, long latestHigh, int dailyVolume, int buyLimit, double volatilityPct)
+        {
+            return add(itemId, name, latestLow, latestHigh, dailyVolume, buyLimit, volatilityPct, 0, 0, 0, 0,
+                    dailyVolume / 24.0);
+        }
+
+        /**
+         * Appends a row including the epoch-second times of the last low and high trades.
+         */
+        Builder add(int itemId, String name, long latestLow, long latestHigh, int dailyVolume, int buyLimit, double volatilityPct,
+                    long lowTradeTime, long highTradeTime)
+        {
+            return add(itemId, name, latestLow, latestHigh, dailyVolume, buyLimit, volatilityPct, lowTradeTime, highTradeTime, 0, 0,
+                    dailyVolume / 24.0);
+        }
+
+        /**
+         * Appends a row with price bands and a liquidity estimate; a band of 0 means
+         * none is known yet.
+         */
+        Builder add(int itemId, String name, long latestLow, long latestHigh, int dailyVolume, int buyLimit, double volatilityPct,
+                    long lowTradeTime, long highTradeTime, long lowPriceBand, long highPriceBand, double tradedPerHour)
+        {
+            return add(itemId, name, latestLow, latestHigh, dailyVolume, buyLimit, volatilityPct, lowTradeTime, highTradeTime,
+                    lowPriceBand, highPriceBand, tradedPerHour, -1);
+        }
+
+        /**
+         * Appends a row including the units traded over the last hour, -1 if unknown.
+         */
+        Builder add(int itemId, String name, long latestLow, long latestHigh, int dailyVolume, int buyLimit, double volatilityPct,
+                    long lowTradeTime, long highTradeTime, long lowPriceBand, long highPriceBand, double tradedPerHour,
+                    int lastHourVolume)
+        {
+            if (itemId < 0) throw new IllegalArgumentException("itemId " + itemId);
+            if (size == ids.length)
+            {
+                int cap = size * 2;
+                ids = Arrays.copyOf(ids, cap);
+                names = Arrays.copyOf(names, cap);
+                low = Arrays.copyOf(low, cap);
+                high = Arrays.copyOf(high, cap);
+                volume = Arrays.copyOf(volume, cap);
+                limit = Arrays.copyOf(limit, cap);
+                volatility = Arrays.copyOf(volatility, cap);
+                lowTime = Arrays.copyOf(lowTime, cap);
+                highTime = Arrays.copyOf(highTime, cap);
+                lowBand = Arrays.copyOf(lowBand, cap);
+                highBand = Arrays.copyOf(highBand, cap);
+                unitsPerHour = Arrays.copyOf(unitsPerHour, cap);
+                hourlyVolume = Arrays.copyOf(hourlyVolume, cap);
+            }
+            ids[size] = itemId;
+            names[size] = name;
+            low[size] = latestLow;
+            high[size] = latestHigh;
+            volume[size] = dailyVolume;
+            limit[size] = buyLimit;
+            volatility[size] = volatilityPct;
+            lowTime[size] = lowTradeTime;
+            highTime[size] = highTradeTime;
+            lowBand[size] = lowPriceBand;
+            highBand[size] = highPriceBand;
+            unitsPerHour[size] = tradedPerHour;
+            hourlyVolume[size] = lastHourVolume;
+            size++;
+            return this;
+        }
+
+        MarketSnapshot build()
+        {
+            return new MarketSnapshot(this, null);
+        }
+
+        /**
+         * Builds the snapshot that follows {@code previous}, recording which ids changed.
+         */
+        MarketSnapshot build(MarketSnapshot previous)
+        {
+            return new MarketSnapshot(this, previous);
+        }
+    }
 }
@@ -0,0 +1,193 @@
+package com.flippingdetector;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import javax.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Counters and stage latencies for the refresh path. When disabled,
+ * {@link #start()} returns 0 and every record call returns after a single
+ * volatile read, so instrumentation can stay in the hot path.
+ * <p>
+ * Usage: {@code long t = metrics.start(); ... metrics.stop(Stage.PARSE, t);}
+ */
+@Slf4j
+@Singleton
+class Metrics
+{
+    static final long REPORT_SECONDS = 30;
+
+    enum Stage
+    {
+        // Request sent to response headers received
+        FETCH,
+        // Streaming the body through the decoder, so includes transfer time
+        PARSE,
+        // Snapshot columns and the diff against the previous one
+        BUILD,
+        // Filtering and scoring; interleaved per row, so timed together
+        RANK,
+        ALLOCATE,
+        // Applying a batch of panel updates on the EDT
+        RENDER
+    }
+
+    enum Counter
+    {
+        REFRESHES,
+        REFRESH_FAILURES,
+        PAYLOAD_BYTES,
+        LATEST_UNCHANGED,
+        MAPPING_HITS,
+        MAPPING_MISSES,
+        RANK_INCREMENTAL,
+        RANK_REBUILDS,
+        ITEMS_CONSIDERED,
+        ITEMS_PASSED,
+        CANDIDATES_BUILT
+    }
+
+    private final LatencyHistogram[] stages = new LatencyHistogram[Stage.values().length];
+    private final LongAdder[] counters = new LongAdder[Counter.values().length];
+    private volatile boolean enabled;
+    private ScheduledExecutorService reporter;
+
+    Metrics()
+    {
+        for (int i = 0; i < stages.length; i++)
+        {
+            stages[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < counters.length; i++)
+        {
+            counters[i] = new LongAdder();
+        }
+    }
+
+    boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Turns collection on or off. Turning it on starts from zero.
+     */
+    void setEnabled(boolean on)
+    {
+        if (on && !enabled)
+        {
+            for (LatencyHistogram h : stages) h.reset();
+            for (LongAdder c : counters) c.reset();
+        }
+        enabled = on;
+    }
+
+    /**
+     * @return a start timestamp for {@link #stop}, or 0 when disabled
+     */
+    long start()
+    {
+        // Low bit set so a real timestamp is never mistaken for "disabled"
+        return enabled ? System.nanoTime() | 1 : 0;
+    }
+
+    void stop(Stage stage, long started)
+    {
+        if (started != 0)
+        {
+            stages[stage.ordinal()].record(System.nanoTime() - started);
+        }
+    }
+
+    void add(Counter counter, long n)
+    {
+        if (enabled)
+        {
+            counters[counter.ordinal()].add(n);
+        }
+    }
+
+    void increment(Counter counter)
+    {
+        add(counter, 1);
+    }
+
+    long count(Counter counter)
+    {
+        return counters[counter.ordinal()].sum();
+    }
+
+    /**
+     * Hands {@code sink} a summary every {@link #REPORT_SECONDS} while enabled
+     * and logs the same as one line.
+     */
+    synchronized void startReporting(Consumer<String> sink)
+    {
+        stopReporting();
+        reporter = Executors.newSingleThreadScheduledExecutor(r ->
+        {
+            Thread t = new Thread(r, "flipping-detector-metrics");
+            t.setDaemon(true);
+            return t;
+        });
+        reporter.scheduleWithFixedDelay(() ->
+        {
+            if (!enabled) return;
+            String line = summary("; ");
+            log.info("Metrics: {}", line);
+            sink.accept(summary("\n"));
+        }, REPORT_SECONDS, REPORT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    synchronized void stopReporting()
+    {
+        if (reporter != null)
+        {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+    }
+
+    String summary(String separator)
+    {
+        StringBuilder sb = new StringBuilder(512);
+        for (Stage s : Stage.values())
+        {
+            LatencyHistogram h = stages[s.ordinal()];
+            if (h.count() == 0) continue;
+            sb.append(s.name().toLowerCase()).append(' ')
+                    .append(h.count()).append("x p50 ").append(millis(h.quantileNanos(0.5)))
+                    .append(" p99 ").append(millis(h.quantileNanos(0.99)))
+                    .append(" max ").append(millis(h.maxNanos()))
+                    .append(separator);
+        }
+
+        long refreshes = count(Counter.REFRESHES);
+        sb.append("refreshes ").append(refreshes).append(", failed ").append(count(Counter.REFRESH_FAILURES))
+                .append(", unchanged ").append(count(Counter.LATEST_UNCHANGED))
+                .append(", avg payload ").append(refreshes == 0 ? 0 : count(Counter.PAYLOAD_BYTES) / refreshes / 1024).append(" KiB")
+                .append(separator);
+        sb.append("mapping cache ").append(percent(count(Counter.MAPPING_HITS), count(Counter.MAPPING_MISSES)))
+                .append(" hits, incremental ranks ").append(percent(count(Counter.RANK_INCREMENTAL), count(Counter.RANK_REBUILDS)))
+                .append(separator);
+        sb.append("items ").append(count(Counter.ITEMS_CONSIDERED)).append(" considered, ")
+                .append(count(Counter.ITEMS_PASSED)).append(" passed, ")
+                .append(count(Counter.CANDIDATES_BUILT)).append(" built");
+        return sb.toString();
+    }
+
+    private static String millis(long nanos)
+    {
+        return Math.round(nanos / 10_000.0) / 100.0 + "ms";
+    }
+
+    private static String percent(long hits, long misses)
+    {
+        long n = hits + misses;
+        return n == 0 ? "-" : Math.round(100.0 * hits / n) + "%";
+    }
+}
@@ -14,4 +14,7 @@ class FlipCandidate
     int dailyVolume;
     int buyLimit;
     double volatilityPct;
+    // Hours to buy and sell the whole quantity, see FillModel
+    double expectedFillHours;
+    long gpPerHour;
 }
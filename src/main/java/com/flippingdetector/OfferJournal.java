@@ -0,0 +1,311 @@
+package com.flippingdetector;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.api.GrandExchangeOfferState;
+
+/**
+ * Append-only, line-delimited journal of offer transitions, paired with a
+ * compacted state snapshot. All file I/O runs on one background thread:
+ * appends are buffered and fsynced in batches, and compaction writes the
+ * snapshot and truncates the journal in the same queue, so every record
+ * appended before a compaction is covered by that snapshot.
+ * <p>
+ * Each record carries a sequence number and the snapshot stores the last one
+ * it covers, so a crash between replacing the snapshot and deleting the
+ * journal does not replay those records twice.
+ */
+@Slf4j
+final class OfferJournal
+{
+    private static final long SYNC_INTERVAL_MS = 1000;
+
+    private final File snapshotFile;
+    private final File journalFile;
+
+    private ScheduledExecutorService executor;
+    private FileOutputStream stream;
+    private Writer writer;
+    private boolean unsynced;
+    private int appended;
+    // Of the last record appended or replayed
+    private long sequence;
+
+    OfferJournal(File snapshotFile, File journalFile)
+    {
+        this.snapshotFile = snapshotFile;
+        this.journalFile = journalFile;
+    }
+
+    File snapshotFile()
+    {
+        return snapshotFile;
+    }
+
+    /**
+     * @return sequence number of the last record appended or replayed, for the
+     *         snapshot to record as covered
+     */
+    long sequence()
+    {
+        return sequence;
+    }
+
+    /**
+     * Feeds every complete record in the journal after {@code covered} to
+     * {@code sink}, oldest first. A torn or corrupt trailing line from a crash
+     * is skipped.
+     *
+     * @param covered sequence number the snapshot already includes, -1 if unknown
+     * @return number of records replayed
+     */
+    int replay(long covered, Consumer<OfferTracker.OfferRecord> sink)
+    {
+        sequence = Math.max(0, covered);
+        if (!journalFile.isFile())
+        {
+            return 0;
+        }
+
+        int n = 0;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), StandardCharsets.UTF_8)))
+        {
+            String line;
+            while ((line = in.readLine()) != null)
+            {
+                String[] f = line.split(",");
+                // Lines from before sequence numbers count as 0
+                long seq = f.length == 8 ? parseSequence(f[0]) : 0;
+                OfferTracker.OfferRecord r = seq < 0 ? null : parse(f, f.length - 7);
+                if (r != null && seq > covered)
+                {
+                    sink.accept(r);
+                    sequence = Math.max(sequence, seq);
+                    n++;
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            log.warn("Failed to replay offer journal", e);
+        }
+        return n;
+    }
+
+    void open()
+    {
+        executor = Executors.newSingleThreadScheduledExecutor(r ->
+        {
+            Thread t = new Thread(r, "flipping-detector-journal");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.scheduleWithFixedDelay(this::sync, SYNC_INTERVAL_MS, SYNC_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues a record for the journal.
+     *
+     * @return records appended since the last compaction
+     */
+    int append(OfferTracker.OfferRecord r)
+    {
+        String line = format(++sequence, r);
+        submit(() ->
+        {
+            ensureWriter();
+            writer.write(line);
+            unsynced = true;
+        });
+        return ++appended;
+    }
+
+    /**
+     * Replaces the snapshot with {@code state} and empties the journal.
+     */
+    void compact(byte[] state)
+    {
+        appended = 0;
+        submit(() ->
+        {
+            File tmp = new File(snapshotFile.getParentFile(), snapshotFile.getName() + ".tmp");
+            Files.createDirectories(snapshotFile.getParentFile().toPath());
+            try (FileOutputStream out = new FileOutputStream(tmp))
+            {
+                out.write(state);
+                out.getFD().sync();
+            }
+            Files.move(tmp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            closeWriter();
+            Files.deleteIfExists(journalFile.toPath());
+        });
+    }
+
+    /**
+     * Flushes outstanding work and stops the journal thread, waiting briefly for it.
+     */
+    void close()
+    {
+        ScheduledExecutorService ex = executor;
+        executor = null;
+        if (ex == null)
+        {
+            return;
+        }
+
+        ex.execute(() ->
+        {
+            sync();
+            try
+            {
+                closeWriter();
+            }
+            catch (IOException e)
+            {
+                log.warn("Failed to close offer journal", e);
+            }
+        });
+        ex.shutdown();
+        try
+        {
+            if (!ex.awaitTermination(2, TimeUnit.SECONDS))
+            {
+                ex.shutdownNow();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            ex.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void submit(IoTask task)
+    {
+        ScheduledExecutorService ex = executor;
+        if (ex == null)
+        {
+            return;
+        }
+
+        try
+        {
+            ex.execute(() ->
+            {
+                try
+                {
+                    task.run();
+                }
+                catch (IOException e)
+                {
+                    log.warn("Offer journal I/O failed", e);
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            log.debug("Offer journal closed, dropping write");
+        }
+    }
+
+    private void sync()
+    {
+        if (!unsynced || writer == null)
+        {
+            return;
+        }
+
+        try
+        {
+            writer.flush();
+            stream.getFD().sync();
+            unsynced = false;
+        }
+        catch (IOException e)
+        {
+            log.warn("Failed to sync offer journal", e);
+        }
+    }
+
+    private void ensureWriter() throws IOException
+    {
+        if (writer == null)
+        {
+            Files.createDirectories(journalFile.getParentFile().toPath());
+            stream = new FileOutputStream(journalFile, true);
+            writer = new OutputStreamWriter(stream, StandardCharsets.UTF_8);
+        }
+    }
+
+    private void closeWriter() throws IOException
+    {
+        if (writer != null)
+        {
+            writer.close();
+            writer = null;
+            stream = null;
+            unsynced = false;
+        }
+    }
+
+    static String format(long sequence, OfferTracker.OfferRecord r)
+    {
+        return sequence + "," + r.getSlot() + "," + r.getItemId() + "," + r.getState().name() + "," + r.getQuantityTraded() + ","
+                + r.getQuantityTotal() + "," + r.getPriceEach() + "," + r.getTimestamp().toEpochMilli() + "\n";
+    }
+
+    // The seven record fields starting at f[at]
+    static OfferTracker.OfferRecord parse(String[] f, int at)
+    {
+        if (at < 0 || f.length != at + 7)
+        {
+            return null;
+        }
+
+        try
+        {
+            return new OfferTracker.OfferRecord(Integer.parseInt(f[at]), Integer.parseInt(f[at + 1]),
+                    GrandExchangeOfferState.valueOf(f[at + 2]), Integer.parseInt(f[at + 3]), Integer.parseInt(f[at + 4]),
+                    Integer.parseInt(f[at + 5]), Instant.ofEpochMilli(Long.parseLong(f[at + 6])));
+        }
+        catch (IllegalArgumentException e)
+        {
+            return null;
+        }
+    }
+
+    private static long parseSequence(String s)
+    {
+        try
+        {
+            return Long.parseLong(s);
+        }
+        catch (NumberFormatException e)
+        {
+            return -1;
+        }
+    }
+
+    @FunctionalInterface
+    private interface IoTask
+    {
+        void run() throws IOException;
+    }
+}
@@ -1,74 +1,200 @@
 package com.flippingdetector;
 
-import java.time.Duration;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.time.Instant;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.LongSupplier;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.Client;
+import net.runelite.api.GameState;
 import net.runelite.api.GrandExchangeOffer;
 import net.runelite.api.GrandExchangeOfferState;
 import net.runelite.api.events.GrandExchangeChanged;
+import net.runelite.client.RuneLite;
 
+/**
+ * Slot state and buy-limit progress. Events arrive on the client thread while
+ * views are taken from the refresh thread, so public entry points synchronise.
+ */
+@Slf4j
 @Singleton
 class OfferTracker
 {
-    private static final Duration WINDOW = Duration.ofHours(4);
+    private static final File DIR = new File(RuneLite.RUNELITE_DIR, "flipping-detector");
+    private static final int FORMAT_VERSION = 3;
+    // Buy-limit ring size before version 3 stored it
+    private static final int LEGACY_BUCKETS = 48;
+    private static final int COMPACT_EVERY = 256;
 
     private final Client client;
+    private final OfferJournal journal;
+    private final LongSupplier clock;
 
     private final Map<Integer, OfferRecord> bySlot = new HashMap<>();
-    private final Map<Integer, RollingBuy> rolling = new HashMap<>(); // itemId -> buys in window
+    private final BuyLimitWindow window = new BuyLimitWindow();
+    private OfferView view = OfferView.EMPTY;
+    private boolean viewDirty;
+    private long viewBucket;
 
     @Inject
     OfferTracker(Client client)
+    {
+        this(client, DIR, System::currentTimeMillis);
+    }
+
+    /**
+     * @param dir where the offer state and journal live
+     * @param clock epoch millis, used to stamp transitions and age the buy-limit window
+     */
+    OfferTracker(Client client, File dir, LongSupplier clock)
     {
         this.client = client;
+        this.journal = new OfferJournal(new File(dir, "offers.bin"), new File(dir, "offers.journal"));
+        this.clock = clock;
     }
 
-    void start() {}
+    /**
+     * Restores the last compacted state and replays the journal on top of it.
+     */
+    synchronized void start()
+    {
+        long covered = load();
+        int replayed = journal.replay(covered, this::apply);
+        journal.open();
+        if (replayed > 0)
+        {
+            log.debug("Replayed {} offer transitions", replayed);
+            journal.compact(snapshotBytes());
+        }
+        viewDirty = true;
+    }
 
-    void stop()
+    synchronized void stop()
     {
+        journal.compact(snapshotBytes());
+        journal.close();
         bySlot.clear();
-        rolling.clear();
+        window.clear();
+        view = OfferView.EMPTY;
+        viewDirty = false;
     }
 
-    void onGEChange(GrandExchangeChanged ev)
+    synchronized void onGEChange(GrandExchangeChanged ev)
     {
         int slot = ev.getSlot();
         GrandExchangeOffer of = ev.getOffer();
-        bySlot.put(slot, new OfferRecord(slot, of.getItemId(), of.getState(), of.getQuantitySold(), of.getTotalQuantity(), of.getPrice(), Instant.now()));
+        // The client blanks every slot while logging in or hopping; those are not real transitions
+        if (of.getState() == GrandExchangeOfferState.EMPTY && client.getGameState() != GameState.LOGGED_IN)
+        {
+            return;
+        }
+
+        OfferRecord next = new OfferRecord(slot, of.getItemId(), of.getState(), of.getQuantitySold(), of.getTotalQuantity(), of.getPrice(), Instant.ofEpochMilli(clock.getAsLong()));
+        OfferRecord prev = bySlot.get(slot);
+        // Login re-sends every slot; an identical state is not a transition worth journaling
+        if (prev != null && prev.itemId == next.itemId && prev.state == next.state && prev.quantityTraded == next.quantityTraded
+                && prev.quantityTotal == next.quantityTotal && prev.priceEach == next.priceEach)
+        {
+            return;
+        }
 
-        if (of.getState() == GrandExchangeOfferState.BOUGHT || of.getState() == GrandExchangeOfferState.BUYING)
+        apply(next);
+        if (journal.append(next) >= COMPACT_EVERY)
         {
-            if (of.getQuantitySold() > 0)
+            journal.compact(snapshotBytes());
+        }
+    }
+
+    private void apply(OfferRecord next)
+    {
+        OfferRecord prev = bySlot.put(next.slot, next);
+        window.record(next.itemId, boughtSince(prev, next), next.timestamp.toEpochMilli());
+        viewDirty = true;
+    }
+
+    /**
+     * Quantity bought between two observations of a slot. The GE reports the
+     * cumulative amount traded per offer, so only the increase counts; a
+     * different offer in the slot starts from zero.
+     */
+    private static int boughtSince(OfferRecord prev, OfferRecord next)
+    {
+        if (!isBuy(next.state)) return 0;
+        boolean sameOffer = prev != null && isBuy(prev.state)
+                && prev.itemId == next.itemId
+                && prev.quantityTotal == next.quantityTotal
+                && prev.priceEach == next.priceEach
+                && prev.quantityTraded <= next.quantityTraded;
+        return sameOffer ? next.quantityTraded - prev.quantityTraded : next.quantityTraded;
+    }
+
+    private static boolean isBuy(GrandExchangeOfferState state)
+    {
+        return state == GrandExchangeOfferState.BUYING || state == GrandExchangeOfferState.BOUGHT
+                || state == GrandExchangeOfferState.CANCELLED_BUY;
+    }
+
+    /**
+     * Immutable view of the current offers for one refresh. Rebuilt after an
+     * offer changed or a window bucket aged out; otherwise the previously
+     * published instance is returned.
+     */
+    synchronized OfferView view()
+    {
+        long now = clock.getAsLong();
+        long bucket = now / BuyLimitWindow.BUCKET_MS;
+        if (viewDirty || bucket != viewBucket)
+        {
+            window.expire(now);
+
+            int[] activeIds = new int[bySlot.size()];
+            int active = 0;
+            for (OfferRecord r : bySlot.values())
             {
-                RollingBuy rb = rolling.getOrDefault(of.getItemId(), new RollingBuy(0, Instant.now()));
-                int newQty = Math.min(Integer.MAX_VALUE, rb.qty + of.getQuantitySold());
-                rolling.put(of.getItemId(), new RollingBuy(newQty, Instant.now()));
+                if (r.state == GrandExchangeOfferState.BUYING || r.state == GrandExchangeOfferState.SELLING)
+                    activeIds[active++] = r.itemId;
             }
-        }
 
-        // Expire rolling buys outside the 4h window
-        rolling.entrySet().removeIf(e -> Duration.between(e.getValue().lastUpdate, Instant.now()).compareTo(WINDOW) > 0);
+            Map<Integer, Integer> totals = window.totals();
+            int[] boughtIds = new int[totals.size()];
+            int[] boughtQty = new int[totals.size()];
+            int n = 0;
+            for (Map.Entry<Integer, Integer> e : totals.entrySet())
+            {
+                boughtIds[n] = e.getKey();
+                boughtQty[n++] = e.getValue();
+            }
+
+            view = new OfferView(Arrays.copyOf(activeIds, active), boughtIds, boughtQty, active);
+            viewDirty = false;
+            viewBucket = bucket;
+        }
+        return view;
     }
 
-    int boughtInWindow(int itemId)
+    synchronized int boughtInWindow(int itemId)
     {
-        RollingBuy rb = rolling.get(itemId);
-        return rb == null ? 0 : rb.qty;
+        return window.bought(itemId, clock.getAsLong());
     }
 
-    boolean isInActiveOffer(int itemId)
+    synchronized boolean isInActiveOffer(int itemId)
     {
         return bySlot.values().stream()
                 .anyMatch(r -> r.itemId == itemId && (r.state == GrandExchangeOfferState.BUYING || r.state == GrandExchangeOfferState.SELLING));
     }
 
-    int filledSlotCount()
+    synchronized int filledSlotCount()
     {
         int c = 0;
         for (OfferRecord r : bySlot.values())
@@ -79,7 +205,7 @@ class OfferTracker
         return c;
     }
 
-    Map<Integer, OfferRecord> currentOffers()
+    synchronized Map<Integer, OfferRecord> currentOffers()
     {
         return new HashMap<>(bySlot);
     }
@@ -96,10 +222,77 @@ class OfferTracker
         Instant timestamp;
     }
 
-    @Value
-    static class RollingBuy
+    /**
+     * @return journal sequence number the loaded state covers, -1 if unknown
+     */
+    private long load()
+    {
+        File file = journal.snapshotFile();
+        if (!file.isFile())
+        {
+            return -1;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+        {
+            int version = in.readInt();
+            if (version < 1 || version > FORMAT_VERSION)
+            {
+                return -1;
+            }
+            // Version 1 predates journal sequence numbers
+            long covered = version == 1 ? -1 : in.readLong();
+            int slots = in.readInt();
+            for (int i = 0; i < slots; i++)
+            {
+                OfferRecord r = new OfferRecord(in.readInt(), in.readInt(), GrandExchangeOfferState.valueOf(in.readUTF()),
+                        in.readInt(), in.readInt(), in.readInt(), Instant.ofEpochMilli(in.readLong()));
+                bySlot.put(r.slot, r);
+            }
+            if (version < 3)
+            {
+                window.read(in, LEGACY_BUCKETS);
+            }
+            else
+            {
+                window.read(in);
+            }
+            return covered;
+        }
+        catch (IOException | IllegalArgumentException e)
+        {
+            log.warn("Failed to read offer state", e);
+            bySlot.clear();
+            window.clear();
+            return -1;
+        }
+    }
+
+    private byte[] snapshotBytes()
     {
-        int qty;
-        Instant lastUpdate;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes))
+        {
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(journal.sequence());
+            out.writeInt(bySlot.size());
+            for (OfferRecord r : bySlot.values())
+            {
+                out.writeInt(r.slot);
+                out.writeInt(r.itemId);
+                out.writeUTF(r.state.name());
+                out.writeInt(r.quantityTraded);
+                out.writeInt(r.quantityTotal);
+                out.writeInt(r.priceEach);
+                out.writeLong(r.timestamp.toEpochMilli());
+            }
+            window.write(out);
+        }
+        catch (IOException e)
+        {
+            // In-memory stream; cannot happen
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
     }
 }
@@ -0,0 +1,83 @@
+package com.flippingdetector;
+
+import java.util.Arrays;
+
+/**
+ * Immutable picture of the player's offers, built once per refresh by
+ * {@link OfferTracker#view()} so the filters can check every item in O(1)
+ * without touching the live maps or allocating. Active item ids are a bitset;
+ * quantities bought in the current limit window sit in an open-addressed
+ * int to int table.
+ */
+final class OfferView
+{
+    static final OfferView EMPTY = new OfferView(new int[0], new int[0], new int[0], 0);
+
+    private static final int FREE = -1;
+
+    private final long[] active;
+    private final int[] keys;
+    private final int[] values;
+    private final int mask;
+    private final int filledSlots;
+
+    /**
+     * @param activeIds item ids in a BUYING or SELLING slot
+     * @param boughtIds item ids with purchases in the current window
+     * @param boughtQty quantity bought for the id at the same position in {@code boughtIds}
+     */
+    OfferView(int[] activeIds, int[] boughtIds, int[] boughtQty, int filledSlots)
+    {
+        int maxId = 0;
+        for (int id : activeIds)
+        {
+            maxId = Math.max(maxId, id);
+        }
+        active = new long[(maxId >>> 6) + 1];
+        for (int id : activeIds)
+        {
+            if (id >= 0) active[id >>> 6] |= 1L << id;
+        }
+
+        int cap = Integer.highestOneBit(Math.max(4, boughtIds.length * 2 + 1)) << 1;
+        keys = new int[cap];
+        values = new int[cap];
+        mask = cap - 1;
+        Arrays.fill(keys, FREE);
+        for (int i = 0; i < boughtIds.length; i++)
+        {
+            int slot = slotOf(boughtIds[i]);
+            keys[slot] = boughtIds[i];
+            values[slot] += boughtQty[i];
+        }
+        this.filledSlots = filledSlots;
+    }
+
+    boolean isActive(int itemId)
+    {
+        int word = itemId >>> 6;
+        return itemId >= 0 && word < active.length && (active[word] & (1L << itemId)) != 0;
+    }
+
+    int boughtInWindow(int itemId)
+    {
+        int slot = slotOf(itemId);
+        return keys[slot] == itemId ? values[slot] : 0;
+    }
+
+    int filledSlotCount()
+    {
+        return filledSlots;
+    }
+
+    // Linear probing; returns the slot holding itemId or the free slot where it would go
+    private int slotOf(int itemId)
+    {
+        int slot = (itemId * 0x9E3779B9) >>> 16 & mask;
+        while (keys[slot] != FREE && keys[slot] != itemId)
+        {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+}
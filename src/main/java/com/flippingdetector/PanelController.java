@@ -2,42 +2,133 @@ package com.flippingdetector;
 
 import java.awt.BorderLayout;
 import java.awt.GridLayout;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import javax.swing.BorderFactory;
+import javax.swing.BoxLayout;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
-import lombok.Getter;
+import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import net.runelite.api.GrandExchangeOfferState;
 import net.runelite.client.ui.ClientToolbar;
+import net.runelite.client.ui.ColorScheme;
 import net.runelite.client.ui.NavigationButton;
 import net.runelite.client.ui.PluginPanel;
 
+/**
+ * Side panel with a fixed pool of rows: one per possible suggestion and one per
+ * GE slot. Callers on other threads diff their data against what they last sent
+ * and only format the rows that changed. The changed text is then applied on
+ * the EDT in one batch, so the panel is never rebuilt while the client renders.
+ */
 @Singleton
 class PanelController
 {
+    private static final int ROWS = FlippingDetectorPlugin.GE_SLOTS;
+
     private final FlippingDetectorConfig config;
+    private final Metrics metrics;
     private final PluginPanel panel = new PluginPanel();
     private final JTextField gpOverride = new JTextField();
+    private volatile Runnable gpListener = () -> {};
+
+    // Components; only touched on the EDT once the panel is showing
+    private final JLabel summary = new JLabel("Suggestions will appear here...");
+    private final JLabel metricsLabel = new JLabel();
+    private final Row[] suggestionRows = new Row[ROWS];
+    private final Row[] offerRows = new Row[ROWS];
+    private boolean built;
+
+    // What was last sent to the EDT. Suggestions are sent from the refresh thread
+    // and offers from the client thread, so each side owns its own copy.
+    private final FlipCandidate[] sentPicks = new FlipCandidate[ROWS];
+    private String sentSummary;
+    private final OfferTracker.OfferRecord[] sentOffers = new OfferTracker.OfferRecord[ROWS];
+    private final String[] sentOfferNames = new String[ROWS];
+    private final String[] sentOfferChecks = new String[ROWS];
 
     @Inject
-    PanelController(FlippingDetectorConfig config)
+    PanelController(FlippingDetectorConfig config, Metrics metrics)
     {
         this.config = config;
+        this.metrics = metrics;
+        gpOverride.getDocument().addDocumentListener(new DocumentListener()
+        {
+            @Override
+            public void insertUpdate(DocumentEvent e)
+            {
+                gpListener.run();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e)
+            {
+                gpListener.run();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e)
+            {
+                gpListener.run();
+            }
+        });
     }
 
     void init()
     {
+        if (built)
+        {
+            return;
+        }
+        built = true;
         panel.setLayout(new BorderLayout());
 
         JPanel top = new JPanel(new GridLayout(0, 2, 6, 6));
         top.add(new JLabel("Manual GP Override:"));
         top.add(gpOverride);
 
+        JPanel body = new JPanel();
+        body.setLayout(new BoxLayout(body, BoxLayout.Y_AXIS));
+        body.add(summary);
+        for (int i = 0; i < ROWS; i++)
+        {
+            suggestionRows[i] = new Row();
+            body.add(suggestionRows[i].panel);
+        }
+
+        JLabel offersHeader = new JLabel("Your offers");
+        offersHeader.setBorder(BorderFactory.createEmptyBorder(8, 0, 2, 0));
+        body.add(offersHeader);
+        for (int i = 0; i < ROWS; i++)
+        {
+            offerRows[i] = new Row();
+            body.add(offerRows[i].panel);
+        }
+
+        metricsLabel.setBorder(BorderFactory.createEmptyBorder(8, 0, 0, 0));
+        metricsLabel.setForeground(ColorScheme.LIGHT_GRAY_COLOR);
+        metricsLabel.setVisible(false);
+        body.add(metricsLabel);
+
         panel.add(top, BorderLayout.NORTH);
-        panel.add(new JLabel("Suggestions will appear here..."), BorderLayout.CENTER);
+        panel.add(body, BorderLayout.CENTER);
+    }
+
+    /**
+     * Runs {@code listener} whenever the manual GP override is edited, replacing
+     * any previous listener.
+     */
+    void onGpOverrideChanged(Runnable listener)
+    {
+        gpListener = listener;
     }
 
     NavigationButton buildNavButton(ClientToolbar toolbar)
@@ -49,26 +140,113 @@ class PanelController
                 .build();
     }
 
+    /**
+     * Shows up to one suggestion per slot. Safe from any single non-EDT thread.
+     */
     void showSuggestions(List<FlipCandidate> picks, long userGp, int openSlots)
     {
-        JPanel list = new JPanel(new GridLayout(Math.max(1, picks.size() + 1), 1, 4, 4));
-        list.add(new JLabel(String.format("Open slots: %d • GP considered: %,d", openSlots, userGp)));
-        for (FlipCandidate c : picks)
+        showSuggestions(picks, userGp, openSlots, 0);
+    }
+
+    /**
+     * Shows picks saved by an earlier session, headed with their age until the
+     * first live {@link #showSuggestions(List, long, int)} replaces them.
+     */
+    void showStaleSuggestions(List<FlipCandidate> picks, long userGp, int openSlots, long ageMs)
+    {
+        showSuggestions(picks, userGp, openSlots, Math.max(1, ageMs));
+    }
+
+    private void showSuggestions(List<FlipCandidate> picks, long userGp, int openSlots, long staleMs)
+    {
+        List<Runnable> updates = new ArrayList<>();
+
+        StringBuilder sb = new StringBuilder("Open slots: ").append(openSlots).append(" • GP considered: ")
+                .append(gp(userGp));
+        if (staleMs > 0)
         {
-            list.add(new JLabel(String.format("%s (ID %d): buy %,d x %d → sell %,d | est. profit %,d | vol %d/day | limit %d",
-                    c.getName(), c.getItemId(), c.getBuyPrice(), c.getQuantity(), c.getSellPrice(), c.getExpectedProfit(),
-                    c.getDailyVolume(), c.getBuyLimit())));
+            sb.append(" • from ").append(hours(staleMs / 3_600_000.0)).append(" ago, refreshing…");
         }
-        panel.removeAll();
-        panel.setLayout(new BorderLayout());
-        panel.add(list, BorderLayout.CENTER);
-        panel.revalidate();
-        panel.repaint();
+        String header = sb.toString();
+        if (!header.equals(sentSummary))
+        {
+            sentSummary = header;
+            updates.add(() -> summary.setText(header));
+        }
+
+        for (int i = 0; i < ROWS; i++)
+        {
+            FlipCandidate c = i < picks.size() ? picks.get(i) : null;
+            if (Objects.equals(c, sentPicks[i]))
+                continue;
+            sentPicks[i] = c;
+
+            Row row = suggestionRows[i];
+            if (c == null)
+            {
+                updates.add(row::hide);
+                continue;
+            }
+            String title = c.getName() + " (ID " + c.getItemId() + ")";
+            String detail = "Buy " + gp(c.getBuyPrice()) + " x " + c.getQuantity() + " → sell " + gp(c.getSellPrice());
+            String extra = "Profit " + gp(c.getExpectedProfit()) + " | ~" + hours(c.getExpectedFillHours())
+                    + ", " + gp(c.getGpPerHour()) + " gp/h";
+            String tooltip = "Volume " + gp(c.getDailyVolume()) + "/day, limit " + gp(c.getBuyLimit());
+            updates.add(() -> row.show(title, detail, extra, tooltip));
+        }
+        apply(updates);
+    }
+
+    /**
+     * Shows the player's slots, one row each, with a reprice suggestion under
+     * any active offer the market has moved past. Call from the client thread.
+     *
+     * @param snapshot used to name items and check offers; may be null
+     * @param live false for a snapshot saved by an earlier session, which only names items
+     */
+    void updateOffers(Map<Integer, OfferTracker.OfferRecord> offers, MarketSnapshot snapshot, boolean live)
+    {
+        List<Runnable> updates = new ArrayList<>();
+        for (int slot = 0; slot < ROWS; slot++)
+        {
+            OfferTracker.OfferRecord r = offers.get(slot);
+            if (r != null && r.getState() == GrandExchangeOfferState.EMPTY)
+            {
+                r = null;
+            }
+            String name = r == null ? null : itemName(snapshot, r.getItemId());
+            String check = r == null || !live ? null : check(r, UndercutMonitor.check(r, snapshot));
+            if (Objects.equals(r, sentOffers[slot]) && Objects.equals(name, sentOfferNames[slot])
+                    && Objects.equals(check, sentOfferChecks[slot]))
+                continue;
+            sentOffers[slot] = r;
+            sentOfferNames[slot] = name;
+            sentOfferChecks[slot] = check;
+
+            Row row = offerRows[slot];
+            if (r == null)
+            {
+                updates.add(row::hide);
+                continue;
+            }
+            String title = "Slot " + (slot + 1) + ": " + name;
+            String detail = state(r) + " " + r.getQuantityTraded() + " / " + r.getQuantityTotal() + " @ " + gp(r.getPriceEach());
+            updates.add(() -> row.show(title, detail, check, null));
+        }
+        apply(updates);
     }
 
-    void updateOffers(Map<Integer, OfferTracker.OfferRecord> offers)
+    /**
+     * Shows the debug metrics summary, one entry per line, or hides the section when null.
+     */
+    void showMetrics(String text)
     {
-        // Could render offers in a subpanel; keeping minimal for brevity.
+        String html = text == null ? null : "<html>" + text.replace("\n", "<br>") + "</html>";
+        SwingUtilities.invokeLater(() ->
+        {
+            metricsLabel.setText(html);
+            metricsLabel.setVisible(html != null);
+        });
     }
 
     Optional<Long> getManualGpOverride()
@@ -84,4 +262,114 @@ class PanelController
             return Optional.empty();
         }
     }
+
+    private void apply(List<Runnable> updates)
+    {
+        if (updates.isEmpty())
+        {
+            return;
+        }
+        SwingUtilities.invokeLater(() ->
+        {
+            long t = metrics.start();
+            for (Runnable u : updates)
+            {
+                u.run();
+            }
+            metrics.stop(Metrics.Stage.RENDER, t);
+        });
+    }
+
+    private static String itemName(MarketSnapshot names, int itemId)
+    {
+        int i = names == null ? -1 : names.indexOf(itemId);
+        return i < 0 ? "Item " + itemId : names.name(i);
+    }
+
+    private static String check(OfferTracker.OfferRecord r, UndercutMonitor.Check c)
+    {
+        if (c == null) return null;
+        if (!c.isBeaten()) return "~" + hours(c.getFillHours()) + " to fill";
+        return (r.getState() == GrandExchangeOfferState.BUYING ? "Outbid" : "Undercut") + " at " + gp(c.getMarketPrice())
+                + ", try " + gp(c.getSuggestedPrice()) + " (~" + hours(c.getFillHours()) + ")";
+    }
+
+    private static String state(OfferTracker.OfferRecord r)
+    {
+        switch (r.getState())
+        {
+            case BUYING: return "Buying";
+            case BOUGHT: return "Bought";
+            case SELLING: return "Selling";
+            case SOLD: return "Sold";
+            case CANCELLED_BUY: return "Cancelled buy";
+            case CANCELLED_SELL: return "Cancelled sell";
+            default: return r.getState().name();
+        }
+    }
+
+    // 1234567 -> "1,234,567"; String.format is too slow to call per cell
+    static String gp(long v)
+    {
+        String digits = Long.toString(Math.abs(v));
+        StringBuilder sb = new StringBuilder(digits.length() + digits.length() / 3 + 1);
+        if (v < 0) sb.append('-');
+        int lead = digits.length() % 3 == 0 ? 3 : digits.length() % 3;
+        sb.append(digits, 0, lead);
+        for (int i = lead; i < digits.length(); i += 3)
+        {
+            sb.append(',').append(digits, i, i + 3);
+        }
+        return sb.toString();
+    }
+
+    private static String hours(double h)
+    {
+        if (Double.isInfinite(h) || Double.isNaN(h)) return "?h";
+        if (h < 1) return Math.max(1, Math.round(h * 60)) + "m";
+        return Math.round(h * 10) / 10.0 + "h";
+    }
+
+    /**
+     * One reusable row: a title line and up to two detail lines.
+     */
+    private static final class Row
+    {
+        final JPanel panel = new JPanel(new GridLayout(0, 1));
+        final JLabel title = new JLabel();
+        final JLabel detail = new JLabel();
+        final JLabel extra = new JLabel();
+
+        Row()
+        {
+            panel.setBorder(BorderFactory.createEmptyBorder(4, 0, 4, 0));
+            detail.setForeground(ColorScheme.LIGHT_GRAY_COLOR);
+            extra.setForeground(ColorScheme.LIGHT_GRAY_COLOR);
+            panel.add(title);
+            panel.add(detail);
+            panel.add(extra);
+            panel.setVisible(false);
+        }
+
+        void show(String titleText, String detailText, String extraText, String tooltip)
+        {
+            title.setText(titleText);
+            detail.setText(detailText);
+            extra.setText(extraText);
+            extra.setVisible(extraText != null);
+            panel.setToolTipText(tooltip);
+            if (!panel.isVisible())
+            {
+                panel.setVisible(true);
+            }
+        }
+
+        void hide()
+        {
+            if (panel.isVisible())
+            {
+                panel.setVisible(false);
+            }
+        }
+    }
 }
@@ -0,0 +1,108 @@
+package com.flippingdetector;
+
+import java.util.Random;
+
+/**
+ * Picks the delay before the next /latest poll from what earlier polls saw.
+ * <p>
+ * The gap between polls that returned new data, with a poll that found
+ * nothing new in between, is averaged to estimate how often the wiki
+ * publishes; without one the gap says only that publishing is at least that
+ * frequent, so the estimate eases back towards the configured interval and
+ * later polls probe whether it has sped up. After new data the next poll waits the configured
+ * interval, or, when the wiki publishes less often than that, until a few
+ * jittered seconds after the next expected publish. A poll that finds nothing
+ * new retries sooner, at half the configured interval, until the data turns
+ * over. Errors back off exponentially with jitter.
+ * <p>
+ * Not thread-safe: owned by the price thread.
+ */
+final class PollCadence
+{
+    static final long MIN_DELAY_MS = 15_000;
+    private static final long MAX_BACKOFF_MS = 10 * 60_000;
+    // Gaps longer than this are outages or sleeps, not the publish interval;
+    // it is also the longest a poll is ever put off
+    private static final long MAX_INTERVAL_MS = 10 * 60_000;
+    private static final double ALPHA = 0.25;
+    private static final double DECAY = 0.1;
+    // Spread after the expected publish so clients do not all arrive at once
+    private static final long MIN_LAG_MS = 2_000;
+    private static final long LAG_JITTER_MS = 5_000;
+
+    private final Random random;
+    private long lastChangeMs;
+    private double intervalMs = Double.NaN;
+    private int errors;
+    private boolean sawUnchanged;
+
+    PollCadence()
+    {
+        this(new Random());
+    }
+
+    PollCadence(Random random)
+    {
+        this.random = random;
+    }
+
+    /**
+     * @param configuredMs the configured refresh interval
+     * @return delay before the next poll
+     */
+    long changed(long nowMs, long configuredMs)
+    {
+        errors = 0;
+        if (lastChangeMs > 0)
+        {
+            long gap = nowMs - lastChangeMs;
+            if (gap > 0 && gap <= MAX_INTERVAL_MS && sawUnchanged)
+            {
+                intervalMs = Double.isNaN(intervalMs) ? gap : intervalMs + ALPHA * (gap - intervalMs);
+            }
+            else if (!Double.isNaN(intervalMs))
+            {
+                intervalMs += DECAY * (Math.min(gap, configuredMs) - intervalMs);
+            }
+        }
+        lastChangeMs = nowMs;
+        sawUnchanged = false;
+        long delay = Math.max(configuredMs, Double.isNaN(intervalMs) ? 0 : (long) intervalMs + lag());
+        return clamp(delay);
+    }
+
+    long unchanged(long nowMs, long configuredMs)
+    {
+        errors = 0;
+        sawUnchanged = true;
+        long due = Double.isNaN(intervalMs) ? 0 : lastChangeMs + (long) intervalMs + lag();
+        // Late publishes are retried sooner than the configured interval
+        return clamp(due > nowMs ? due - nowMs : configuredMs / 2);
+    }
+
+    long failed(long configuredMs)
+    {
+        errors = Math.min(errors + 1, 16);
+        long backoff = Math.min(MAX_BACKOFF_MS, Math.max(MIN_DELAY_MS, configuredMs) << (errors - 1));
+        // Equal jitter: at least half the backoff, the rest random
+        return backoff / 2 + (long) (random.nextDouble() * (backoff / 2));
+    }
+
+    /**
+     * @return estimated time between publishes, or NaN until two have been seen
+     */
+    double intervalMs()
+    {
+        return intervalMs;
+    }
+
+    private long lag()
+    {
+        return MIN_LAG_MS + (long) (random.nextDouble() * LAG_JITTER_MS);
+    }
+
+    private static long clamp(long delayMs)
+    {
+        return Math.max(MIN_DELAY_MS, Math.min(MAX_INTERVAL_MS, delayMs));
+    }
+}
@@ -1,23 +1,27 @@
 package com.flippingdetector;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
 import javax.inject.Inject;
 import javax.inject.Singleton;
-import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.Client;
 import net.runelite.api.InventoryID;
 import net.runelite.api.Item;
 import net.runelite.api.ItemContainer;
-import net.runelite.client.game.ItemManager;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
@@ -26,41 +30,225 @@ import okhttp3.Response;
 @Singleton
 class PriceService
 {
-    private static final String LATEST_URL = "https://prices.runescape.wiki/api/v1/osrs/latest";
-    private static final String MAPPING_URL = "https://prices.runescape.wiki/api/v1/osrs/mapping";
+    // Used until enough history has been fetched or observed for an item
+    private static final double DEFAULT_VOLATILITY_PCT = 10.0;
 
     private final OkHttpClient http;
-    private final Gson gson = new Gson();
-    private final ItemManager itemManager;
-    private final Client client;
+    private final FlippingDetectorConfig config;
+    private final MappingCache mappingCache;
+    private final HistoryService history;
+    private final Metrics metrics;
+    private final ReplayRecorder recorder;
+    // Reused decode buffer; only touched on the price thread
+    private final WikiDecoder.LatestColumns latest = new WikiDecoder.LatestColumns();
+    // Fed by every poll; also only touched on the price thread
+    private final RollingStats stats = new RollingStats();
 
+    // Conditional /latest state, price thread only. Validators and hash describe
+    // the payload held in latest and are cleared while it is being replaced.
+    private final PollCadence cadence = new PollCadence();
+    private final CRC32C crc = new CRC32C();
+    private byte[] body = new byte[512 * 1024];
+    private int bodyLength = -1;
+    private long bodyHash;
+    private String etag;
+    private String lastModified;
+    private long builtHistoryVersion = -1;
+    private volatile long nextPollMs;
+
+    // Only ever holds the fetch currently running; callers arriving mid-fetch share it
+    private final AtomicReference<CompletableFuture<MarketSnapshot>> inFlight = new AtomicReference<>();
+
+    private volatile ScheduledExecutorService executor;
     private volatile MarketSnapshot snapshot;
+    private volatile Consumer<MarketSnapshot> listener;
 
     @Inject
-    PriceService(OkHttpClient http, ItemManager itemManager, Client client)
+    PriceService(OkHttpClient http, FlippingDetectorConfig config, MappingCache mappingCache, HistoryService history, Metrics metrics,
+                 ReplayRecorder recorder)
     {
         this.http = http;
-        this.itemManager = itemManager;
-        this.client = client;
+        this.config = config;
+        this.mappingCache = mappingCache;
+        this.history = history;
+        this.metrics = metrics;
+        this.recorder = recorder;
     }
 
     void start()
     {
-        refresh();
+        executor = Executors.newSingleThreadScheduledExecutor(r ->
+        {
+            Thread t = new Thread(r, "flipping-detector-prices");
+            t.setDaemon(true);
+            return t;
+        });
+        // Warm the mapping table from disk before the first fetch runs
+        executor.execute(mappingCache::load);
+        executor.execute(() -> history.openStore(config.priceHistoryDays(), System.currentTimeMillis()));
+        executor.execute(this::scheduledPoll);
+    }
+
+    /**
+     * Called on the price thread with each newly published snapshot.
+     */
+    void setSnapshotListener(Consumer<MarketSnapshot> listener)
+    {
+        this.listener = listener;
     }
 
     void stop()
     {
+        ScheduledExecutorService ex = executor;
+        executor = null;
+        if (ex != null)
+        {
+            // Let a fetch in progress finish its store append before the store closes
+            ex.shutdownNow();
+            try
+            {
+                if (!ex.awaitTermination(2, TimeUnit.SECONDS))
+                {
+                    log.warn("Price thread did not stop in time");
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        history.closeStore();
+        CompletableFuture<MarketSnapshot> pending = inFlight.getAndSet(null);
+        if (pending != null)
+        {
+            pending.cancel(false);
+        }
         snapshot = null;
     }
 
+    /**
+     * Returns the last published snapshot without blocking, or null if nothing
+     * has been published yet. Fetching is left to the scheduled poll, so an
+     * outage at startup is retried at its backoff rather than per caller.
+     */
     MarketSnapshot getSnapshot()
     {
-        if (snapshot == null)
+        return snapshot;
+    }
+
+    /**
+     * Starts a fetch on the price thread unless one is already running, in which
+     * case the running fetch's future is returned instead.
+     */
+    CompletableFuture<MarketSnapshot> refreshAsync()
+    {
+        CompletableFuture<MarketSnapshot> pending = new CompletableFuture<>();
+        CompletableFuture<MarketSnapshot> running = inFlight.compareAndExchange(null, pending);
+        if (running != null)
         {
-            refresh();
+            return running;
+        }
+
+        ScheduledExecutorService ex = executor;
+        if (ex == null)
+        {
+            inFlight.compareAndSet(pending, null);
+            pending.cancel(false);
+            return pending;
+        }
+
+        try
+        {
+            ex.execute(() -> runFetch(pending));
+        }
+        catch (RejectedExecutionException e)
+        {
+            inFlight.compareAndSet(pending, null);
+            pending.cancel(false);
+        }
+        return pending;
+    }
+
+    /**
+     * Queues a lazy /timeseries fetch for shortlisted items on the price thread,
+     * so their volatility is known by a later refresh.
+     */
+    void requestHistory(int[] itemIds)
+    {
+        ScheduledExecutorService ex = executor;
+        if (ex == null || itemIds.length == 0)
+        {
+            return;
+        }
+
+        try
+        {
+            ex.execute(() -> history.fetchTimeseries(itemIds, System.currentTimeMillis()));
+        }
+        catch (RejectedExecutionException e)
+        {
+            log.debug("Price thread stopped, dropping history request");
+        }
+    }
+
+    // One chain per executor: each poll schedules the next once it completes,
+    // whoever started it
+    private void scheduledPoll()
+    {
+        ScheduledExecutorService ex = executor;
+        refreshAsync().whenComplete((s, e) ->
+        {
+            if (ex != executor) return;
+            try
+            {
+                ex.schedule(this::scheduledPoll, nextPollMs, TimeUnit.MILLISECONDS);
+            }
+            catch (RejectedExecutionException re)
+            {
+                log.debug("Price thread stopped, not scheduling the next poll");
+            }
+        });
+    }
+
+    private void runFetch(CompletableFuture<MarketSnapshot> pending)
+    {
+        metrics.increment(Metrics.Counter.REFRESHES);
+        MarketSnapshot fresh;
+        boolean published;
+        try
+        {
+            fresh = refresh(System.currentTimeMillis());
+            published = fresh != snapshot;
+            if (executor != null)
+            {
+                snapshot = fresh;
+            }
+            inFlight.compareAndSet(pending, null);
+            pending.complete(fresh);
+        }
+        catch (Exception e)
+        {
+            log.warn("Failed to refresh prices", e);
+            metrics.increment(Metrics.Counter.REFRESH_FAILURES);
+            nextPollMs = cadence.failed(configuredPollMs());
+            inFlight.compareAndSet(pending, null);
+            pending.completeExceptionally(e);
+            return;
+        }
+
+        // Outside the fetch: a failing listener is not a failed poll
+        Consumer<MarketSnapshot> l = listener;
+        if (executor != null && l != null && published)
+        {
+            try
+            {
+                l.accept(fresh);
+            }
+            catch (RuntimeException e)
+            {
+                log.warn("Snapshot listener failed", e);
+            }
         }
-        return snapshot;
     }
 
     Optional<Long> estimateInventoryCoins(Client client)
@@ -85,73 +273,163 @@ class PriceService
         }
     }
 
-    private void refresh()
+    /**
+     * Fetches and publishes a snapshot on the calling thread as of {@code nowMs},
+     * without notifying the listener. For driving the service from a recording;
+     * the plugin only ever goes through {@link #start()}.
+     */
+    MarketSnapshot poll(long nowMs) throws IOException
     {
-        try
+        MarketSnapshot fresh = refresh(nowMs);
+        snapshot = fresh;
+        return fresh;
+    }
+
+    private MarketSnapshot refresh(long nowMs) throws IOException
+    {
+        // Names and buy limits come from the cached mapping table
+        Map<Integer, MappingCache.MapMeta> meta = mappingCache.get();
+        // Volumes and volatility; each endpoint is only re-fetched once its TTL has passed
+        history.refresh(nowMs);
+
+        long allocBefore = threadAllocatedBytes();
+        boolean changed = fetchLatest();
+        nextPollMs = changed ? cadence.changed(nowMs, configuredPollMs()) : cadence.unchanged(nowMs, configuredPollMs());
+        MarketSnapshot previous = snapshot;
+        if (!changed && previous != null && history.version() == builtHistoryVersion)
         {
-            Map<Integer, ItemInfo> items = new HashMap<>();
+            log.debug("/latest unchanged, next poll in {}s", nextPollMs / 1000);
+            return previous;
+        }
+        builtHistoryVersion = history.version();
+
+        long t = metrics.start();
 
-            // Fetch latest highs/lows
-            JsonObject latest = getJson(LATEST_URL).getAsJsonObject("data");
-            // Fetch mapping to get names and buy limits
-            // mapping endpoint returns an array; we build id->(name,limit) map
-            Map<Integer, MapMeta> meta = new HashMap<>();
-            for (JsonElement e : getJsonArray(MAPPING_URL))
+        long nowSec = nowMs / 1000;
+        MarketSnapshot.Builder items = MarketSnapshot.builder(latest.size);
+        for (int i = 0; i < latest.size; i++)
+        {
+            int id = latest.ids[i];
+            stats.observe(id, latest.low[i], latest.high[i], latest.lowTime[i], latest.highTime[i]);
+            MappingCache.MapMeta m = meta.get(id);
+            if (m == null) continue;
+
+            int dailyVolume = history.dailyVolume(id);
+            if (dailyVolume < 0)
             {
-                JsonObject o = e.getAsJsonObject();
-                int id = o.get("id").getAsInt();
-                String name = o.get("name").getAsString();
-                int limit = o.has("limit") && !o.get("limit").isJsonNull() ? o.get("limit").getAsInt() : 0;
-                meta.put(id, new MapMeta(name, limit));
+                // No /24h data yet; approximate via highTime/lowTime recency
+                dailyVolume = latest.highTime[i] != 0 && latest.lowTime[i] != 0 ? 2000 : 0; // placeholder heuristic
             }
-
-            int count = 0;
-            for (Map.Entry<String, JsonElement> en : latest.entrySet())
+            double volatilityPct = history.volatilityPct(id);
+            if (Double.isNaN(volatilityPct))
             {
-                if (count++ > 50000) break; // hard cap
-                int id = Integer.parseInt(en.getKey());
-                JsonObject o = en.getValue().getAsJsonObject();
-                long high = o.has("high") && !o.get("high").isJsonNull() ? o.get("high").getAsLong() : 0;
-                long low = o.has("low") && !o.get("low").isJsonNull() ? o.get("low").getAsLong() : 0;
-                // daily volume is not present here; we approximate via highTime/lowTime recency
-                int dailyVolume = o.has("highTime") && o.has("lowTime") ? 2000 : 0; // placeholder heuristic
-
-                MapMeta m = meta.get(id);
-                if (m == null) continue;
-
-                ItemInfo info = new ItemInfo(id, m.name, low, high, dailyVolume, m.limit, 10.0);
-                items.put(id, info);
+                // Fall back to what this session has observed, then to a flat guess
+                volatilityPct = stats.volatilityPct(id);
+                if (Double.isNaN(volatilityPct)) volatilityPct = DEFAULT_VOLATILITY_PCT;
             }
+            int hourlyVolume = history.hourlyVolume(id);
+            double unitsPerHour = FillModel.unitsPerHour(dailyVolume, hourlyVolume, latest.lowTime[i], latest.highTime[i], nowSec);
+            items.add(id, m.getName(), latest.low[i], latest.high[i], dailyVolume, m.getLimit(), volatilityPct,
+                    latest.lowTime[i], latest.highTime[i], stats.lowBand(id), stats.highBand(id), unitsPerHour, hourlyVolume);
+        }
+        // Record which items moved since the last published snapshot
+        MarketSnapshot fresh = items.build(previous);
+        metrics.stop(Metrics.Stage.BUILD, t);
 
-            snapshot = new MarketSnapshot(new ArrayList<>(items.values()));
+        long allocAfter = threadAllocatedBytes();
+        if (allocBefore >= 0 && allocAfter >= 0)
+        {
+            log.debug("Built snapshot: {} bytes, {} items, {} changed, {} KiB allocated, next poll in {}s", bodyLength, fresh.size(),
+                    fresh.changedIds().length, (allocAfter - allocBefore) / 1024, nextPollMs / 1000);
         }
-        catch (Exception e)
+        else
         {
-            log.warn("Failed to refresh prices", e);
+            log.debug("Built snapshot: {} bytes, {} items, {} changed, next poll in {}s", bodyLength, fresh.size(),
+                    fresh.changedIds().length, nextPollMs / 1000);
         }
+        return fresh;
     }
 
-    private JsonObject getJson(String url) throws IOException
+    /**
+     * Fetches /latest into {@link #latest} unless it is unchanged, either by the
+     * server's word (304) or because the body hashes the same as the last one.
+     * OkHttp asks for gzip and inflates it itself, as long as no Accept-Encoding
+     * header is set here.
+     *
+     * @return whether {@link #latest} now holds new data
+     */
+    private boolean fetchLatest() throws IOException
     {
-        Request req = new Request.Builder().url(url).header("User-Agent", "FlippingDetector/1.0 (RuneLite plugin)").build();
-        try (Response resp = http.newCall(req).execute())
+        Request.Builder req = new Request.Builder().url(WikiApi.url("latest")).header("User-Agent", WikiApi.USER_AGENT);
+        if (etag != null) req.header("If-None-Match", etag);
+        if (lastModified != null) req.header("If-Modified-Since", lastModified);
+
+        long t = metrics.start();
+        try (Response resp = http.newCall(req.build()).execute())
         {
+            metrics.stop(Metrics.Stage.FETCH, t);
+            if (resp.code() == 304 && bodyLength >= 0)
+            {
+                metrics.increment(Metrics.Counter.LATEST_UNCHANGED);
+                return false;
+            }
             if (!resp.isSuccessful()) throw new IOException("HTTP " + resp.code());
-            return gson.fromJson(resp.body().charStream(), JsonObject.class);
+
+            int n = readBody(recorder.body("latest", resp.body()));
+            metrics.add(Metrics.Counter.PAYLOAD_BYTES, n);
+            crc.reset();
+            crc.update(body, 0, n);
+            long hash = crc.getValue();
+            if (n == bodyLength && hash == bodyHash)
+            {
+                etag = resp.header("ETag");
+                lastModified = resp.header("Last-Modified");
+                metrics.increment(Metrics.Counter.LATEST_UNCHANGED);
+                return false;
+            }
+
+            bodyLength = -1;
+            etag = null;
+            lastModified = null;
+            t = metrics.start();
+            WikiDecoder.decodeLatest(new ByteArrayInputStream(body, 0, n), latest);
+            metrics.stop(Metrics.Stage.PARSE, t);
+            bodyLength = n;
+            bodyHash = hash;
+            etag = resp.header("ETag");
+            lastModified = resp.header("Last-Modified");
+            return true;
         }
     }
 
-    private Iterable<JsonElement> getJsonArray(String url) throws IOException
+    private int readBody(InputStream in) throws IOException
     {
-        Request req = new Request.Builder().url(url).header("User-Agent", "FlippingDetector/1.0 (RuneLite plugin)").build();
-        try (Response resp = http.newCall(req).execute())
+        int n = 0;
+        while (true)
         {
-            if (!resp.isSuccessful()) throw new IOException("HTTP " + resp.code());
-            JsonElement parsed = gson.fromJson(resp.body().charStream(), JsonElement.class);
-            return parsed.getAsJsonArray();
+            if (n == body.length)
+            {
+                body = Arrays.copyOf(body, body.length * 2);
+            }
+            int r = in.read(body, n, body.length - n);
+            if (r < 0) return n;
+            n += r;
         }
     }
 
-    @Value
-    static class MapMeta { String name; int limit; }
+    private long configuredPollMs()
+    {
+        return Math.max(PollCadence.MIN_DELAY_MS, config.refreshSeconds() * 1000L);
+    }
+
+    // Per-thread allocation counter where the JVM exposes one (HotSpot), otherwise -1
+    private static long threadAllocatedBytes()
+    {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean)
+        {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
 }
@@ -0,0 +1,672 @@
+package com.flippingdetector;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.RuneLite;
+
+/**
+ * Local history of 5-minute price bars, one partition per UTC day.
+ * <p>
+ * The current day is an append-only log of self-contained varint rows written
+ * a batch per poll, with each item's row offsets indexed in memory. Once the
+ * day is over its log is compacted into a day file: an item index followed by
+ * one block per item, each stored column by column with timestamps and prices
+ * delta encoded. Day files are memory-mapped for reading, so a range scan for
+ * one item decodes a single contiguous block per day.
+ * <p>
+ * Synchronised; in the plugin only the price thread and shutdown touch it.
+ */
+@Slf4j
+@Singleton
+class PriceStore
+{
+    static final File DIR = new File(new File(RuneLite.RUNELITE_DIR, "flipping-detector"), "prices");
+    static final long DAY_SECONDS = 24 * 3600;
+    private static final String LOG_SUFFIX = ".log";
+    private static final String DAY_SUFFIX = ".day";
+    private static final int DAY_MAGIC = 0x46445044; // "FDPD"
+    private static final int FORMAT_VERSION = 1;
+    private static final int DAY_HEADER_BYTES = 20;
+    private static final int INDEX_ENTRY_BYTES = 12;
+    // Marks a batch as complete; written after the rows
+    private static final byte BATCH = (byte) 0xB7;
+    private static final int BATCH_HEADER_BYTES = 5;
+    private static final int MAX_ROW_BYTES = 5 * 10;
+
+    /**
+     * Receives one bar. Prices are 0 when that side did not trade.
+     */
+    interface RowSink
+    {
+        void accept(long timestamp, long low, long high, int lowVolume, int highVolume);
+    }
+
+    interface ScanSink
+    {
+        void accept(int itemId, long timestamp, long low, long high, int lowVolume, int highVolume);
+    }
+
+    private final File dir;
+    // Compacted days mapped so far, by epoch day
+    private final Map<Long, MappedByteBuffer> mapped = new HashMap<>();
+    private ActiveDay active;
+    private long lastTimestamp;
+    private int retentionDays;
+    private boolean open;
+
+    PriceStore()
+    {
+        this(DIR);
+    }
+
+    PriceStore(File dir)
+    {
+        this.dir = dir;
+    }
+
+    synchronized boolean isOpen()
+    {
+        return open;
+    }
+
+    /**
+     * Compacts logs left from earlier days, drops days older than
+     * {@code retentionDays} and reopens today's log.
+     */
+    synchronized void open(int retentionDays, long nowSec)
+    {
+        if (open)
+        {
+            return;
+        }
+        this.retentionDays = retentionDays;
+        try
+        {
+            Files.createDirectories(dir.toPath());
+            long today = Math.floorDiv(nowSec, DAY_SECONDS);
+            for (long day : listDays(LOG_SUFFIX))
+            {
+                if (day < today)
+                {
+                    compact(day);
+                }
+            }
+            prune(today);
+            // Compacted days are closed to appends, so resume after the newest one
+            lastTimestamp = 0;
+            for (long day : listDays(DAY_SUFFIX))
+            {
+                lastTimestamp = Math.max(lastTimestamp, (day + 1) * DAY_SECONDS - 1);
+            }
+            if (logFile(today).isFile())
+            {
+                active = ActiveDay.open(logFile(today), today);
+                lastTimestamp = Math.max(lastTimestamp, active.lastTimestamp);
+            }
+            open = true;
+        }
+        catch (IOException e)
+        {
+            log.warn("Failed to open price history", e);
+            closeActive();
+        }
+    }
+
+    synchronized void close()
+    {
+        open = false;
+        closeActive();
+        mapped.clear();
+    }
+
+    /**
+     * Appends one bar per item in {@code bar}, all stamped {@code timestamp}.
+     * A timestamp not after the last one appended is ignored, so polling the
+     * same bucket twice stores it once, as is one for a day already compacted.
+     */
+    synchronized void append(long timestamp, WikiDecoder.AggregateColumns bar)
+    {
+        if (!open || timestamp <= lastTimestamp || bar.size == 0)
+        {
+            return;
+        }
+
+        long day = Math.floorDiv(timestamp, DAY_SECONDS);
+        try
+        {
+            if (active == null || active.day != day)
+            {
+                if (active != null)
+                {
+                    long finished = active.day;
+                    closeActive();
+                    compact(finished);
+                    prune(day);
+                }
+                if (dayFile(day).isFile())
+                {
+                    // Compacting a new log for it would replace the whole day
+                    return;
+                }
+                active = ActiveDay.open(logFile(day), day);
+            }
+            active.append(timestamp, bar);
+            lastTimestamp = timestamp;
+        }
+        catch (IOException e)
+        {
+            log.warn("Failed to append price history", e);
+            closeActive();
+        }
+    }
+
+    /**
+     * Passes every bar of {@code itemId} with {@code fromSec <= timestamp < toSec}
+     * to {@code sink}, oldest first.
+     */
+    synchronized void range(int itemId, long fromSec, long toSec, RowSink sink)
+    {
+        if (!open)
+        {
+            return;
+        }
+        for (long day = Math.floorDiv(fromSec, DAY_SECONDS); day <= Math.floorDiv(toSec - 1, DAY_SECONDS); day++)
+        {
+            try
+            {
+                if (active != null && active.day == day)
+                {
+                    active.range(itemId, fromSec, toSec, sink);
+                    continue;
+                }
+                ByteBuffer buf = dayBuffer(day);
+                int entry = buf == null ? -1 : findItem(buf, itemId);
+                if (entry >= 0)
+                {
+                    decodeBlock(buf, entry, fromSec, toSec, sink);
+                }
+            }
+            catch (IOException e)
+            {
+                log.warn("Failed to read price history for {}", LocalDate.ofEpochDay(day), e);
+            }
+        }
+    }
+
+    /**
+     * Passes every bar with {@code fromSec <= timestamp < toSec} to {@code sink},
+     * a day at a time and within a day an item at a time.
+     */
+    synchronized void scan(long fromSec, long toSec, ScanSink sink)
+    {
+        if (!open)
+        {
+            return;
+        }
+        for (long day = Math.floorDiv(fromSec, DAY_SECONDS); day <= Math.floorDiv(toSec - 1, DAY_SECONDS); day++)
+        {
+            try
+            {
+                if (active != null && active.day == day)
+                {
+                    for (int itemId : active.itemIds())
+                    {
+                        active.range(itemId, fromSec, toSec, (ts, lo, hi, lv, hv) -> sink.accept(itemId, ts, lo, hi, lv, hv));
+                    }
+                    continue;
+                }
+                ByteBuffer buf = dayBuffer(day);
+                if (buf == null) continue;
+                int items = buf.getInt(16);
+                for (int entry = 0; entry < items; entry++)
+                {
+                    int itemId = buf.getInt(DAY_HEADER_BYTES + entry * INDEX_ENTRY_BYTES);
+                    decodeBlock(buf, entry, fromSec, toSec, (ts, lo, hi, lv, hv) -> sink.accept(itemId, ts, lo, hi, lv, hv));
+                }
+            }
+            catch (IOException e)
+            {
+                log.warn("Failed to read price history for {}", LocalDate.ofEpochDay(day), e);
+            }
+        }
+    }
+
+    private File logFile(long day)
+    {
+        return new File(dir, LocalDate.ofEpochDay(day) + LOG_SUFFIX);
+    }
+
+    private File dayFile(long day)
+    {
+        return new File(dir, LocalDate.ofEpochDay(day) + DAY_SUFFIX);
+    }
+
+    private long[] listDays(String suffix)
+    {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(suffix));
+        if (files == null) return new long[0];
+        long[] days = new long[files.length];
+        int n = 0;
+        for (File f : files)
+        {
+            try
+            {
+                days[n++] = LocalDate.parse(f.getName().substring(0, f.getName().length() - suffix.length())).toEpochDay();
+            }
+            catch (RuntimeException e)
+            {
+                log.debug("Ignoring {} in price history", f.getName());
+            }
+        }
+        return Arrays.copyOf(days, n);
+    }
+
+    private void prune(long today)
+    {
+        for (long day : listDays(DAY_SUFFIX))
+        {
+            if (day <= today - retentionDays)
+            {
+                mapped.remove(day);
+                if (!dayFile(day).delete())
+                {
+                    // Still mapped on some platforms; the next start removes it
+                    log.debug("Could not delete {}", dayFile(day));
+                }
+            }
+        }
+    }
+
+    private void closeActive()
+    {
+        if (active != null)
+        {
+            active.close();
+            active = null;
+        }
+    }
+
+    private ByteBuffer dayBuffer(long day) throws IOException
+    {
+        MappedByteBuffer buf = mapped.get(day);
+        if (buf == null)
+        {
+            File f = dayFile(day);
+            if (!f.isFile()) return null;
+            try (FileChannel ch = FileChannel.open(f.toPath()))
+            {
+                buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            }
+            if (buf.getInt(0) != DAY_MAGIC || buf.getInt(4) != FORMAT_VERSION)
+            {
+                throw new IOException("Not a price history day: " + f);
+            }
+            mapped.put(day, buf);
+        }
+        return buf;
+    }
+
+    // Binary search of the item index; entries are sorted by id
+    private static int findItem(ByteBuffer buf, int itemId)
+    {
+        int lo = 0, hi = buf.getInt(16) - 1;
+        while (lo <= hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            int id = buf.getInt(DAY_HEADER_BYTES + mid * INDEX_ENTRY_BYTES);
+            if (id < itemId) lo = mid + 1;
+            else if (id > itemId) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    /**
+     * Block layout: five varint-length-prefixed columns of {@code count} values
+     * each. Timestamps are seconds of the day, then deltas; prices are zigzag
+     * deltas; volumes are plain varints.
+     */
+    private static void decodeBlock(ByteBuffer day, int entry, long fromSec, long toSec, RowSink sink) throws IOException
+    {
+        int base = DAY_HEADER_BYTES + entry * INDEX_ENTRY_BYTES;
+        int offset = day.getInt(base + 4);
+        int count = day.getInt(base + 8);
+        long dayStart = day.getLong(8);
+
+        ByteBuffer b = day.duplicate();
+        b.position(offset);
+        ByteBuffer[] columns = new ByteBuffer[5];
+        for (int c = 0; c < columns.length; c++)
+        {
+            int len = (int) readVarLong(b);
+            columns[c] = b.slice();
+            columns[c].limit(len);
+            b.position(b.position() + len);
+        }
+
+        long ts = dayStart, low = 0, high = 0;
+        for (int i = 0; i < count; i++)
+        {
+            ts += readVarLong(columns[0]);
+            low += unzigzag(readVarLong(columns[1]));
+            high += unzigzag(readVarLong(columns[2]));
+            int lowVolume = (int) readVarLong(columns[3]);
+            int highVolume = (int) readVarLong(columns[4]);
+            if (ts >= toSec) break;
+            if (ts >= fromSec) sink.accept(ts, low, high, lowVolume, highVolume);
+        }
+    }
+
+    /**
+     * Rewrites a finished day's log as a day file and deletes the log.
+     */
+    private void compact(long day) throws IOException
+    {
+        File logFile = logFile(day);
+        ActiveDay source = ActiveDay.open(logFile, day);
+        byte[] out;
+        try
+        {
+            int[] ids = source.itemIds();
+            Arrays.sort(ids);
+            ByteArrayOutputStream blocks = new ByteArrayOutputStream(64 * 1024);
+            ByteBuffer header = ByteBuffer.allocate(DAY_HEADER_BYTES + ids.length * INDEX_ENTRY_BYTES);
+            header.putInt(DAY_MAGIC).putInt(FORMAT_VERSION).putLong(day * DAY_SECONDS).putInt(ids.length);
+
+            ByteArrayOutputStream[] columns = new ByteArrayOutputStream[5];
+            for (int c = 0; c < columns.length; c++)
+            {
+                columns[c] = new ByteArrayOutputStream(1024);
+            }
+            for (int id : ids)
+            {
+                for (ByteArrayOutputStream c : columns)
+                {
+                    c.reset();
+                }
+                long[] prev = {day * DAY_SECONDS, 0, 0};
+                int[] count = {0};
+                source.range(id, Long.MIN_VALUE, Long.MAX_VALUE, (ts, lo, hi, lv, hv) ->
+                {
+                    writeVarLong(columns[0], ts - prev[0]);
+                    writeVarLong(columns[1], zigzag(lo - prev[1]));
+                    writeVarLong(columns[2], zigzag(hi - prev[2]));
+                    writeVarLong(columns[3], lv);
+                    writeVarLong(columns[4], hv);
+                    prev[0] = ts;
+                    prev[1] = lo;
+                    prev[2] = hi;
+                    count[0]++;
+                });
+
+                header.putInt(id).putInt(header.capacity() + blocks.size()).putInt(count[0]);
+                for (ByteArrayOutputStream c : columns)
+                {
+                    writeVarLong(blocks, c.size());
+                    c.writeTo(blocks);
+                }
+            }
+            out = new byte[header.capacity() + blocks.size()];
+            System.arraycopy(header.array(), 0, out, 0, header.capacity());
+            System.arraycopy(blocks.toByteArray(), 0, out, header.capacity(), blocks.size());
+        }
+        finally
+        {
+            source.close();
+        }
+
+        File target = dayFile(day);
+        File tmp = new File(dir, target.getName() + ".tmp");
+        Files.write(tmp.toPath(), out);
+        Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        mapped.remove(day);
+        Files.delete(logFile.toPath());
+        log.debug("Compacted {} to {} KiB", logFile.getName(), out.length / 1024);
+    }
+
+    static void writeVarLong(ByteArrayOutputStream out, long v)
+    {
+        while ((v & ~0x7FL) != 0)
+        {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    static void writeVarLong(ByteBuffer out, long v)
+    {
+        while ((v & ~0x7FL) != 0)
+        {
+            out.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.put((byte) v);
+    }
+
+    static long readVarLong(ByteBuffer in) throws IOException
+    {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            if (!in.hasRemaining()) throw new IOException("Truncated varint");
+            byte b = in.get();
+            v |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return v;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static long zigzag(long v)
+    {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unzigzag(long v)
+    {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    /**
+     * Today's log: batches of {@code [BATCH][int rows]} followed by rows of
+     * varint id, seconds of the day, low, high, low volume and high volume. The
+     * marker byte is written last, after the rows are forced to disk, so a
+     * batch torn by a crash is dropped on reopen along with anything after it.
+     */
+    private static final class ActiveDay
+    {
+        final long day;
+        final FileChannel channel;
+        // Row offsets per item, in append order
+        final Map<Integer, Offsets> index = new TreeMap<>();
+        long end;
+        long lastTimestamp;
+
+        private ActiveDay(long day, FileChannel channel)
+        {
+            this.day = day;
+            this.channel = channel;
+        }
+
+        static ActiveDay open(File f, long day) throws IOException
+        {
+            ActiveDay d = new ActiveDay(day, new RandomAccessFile(f, "rw").getChannel());
+            try
+            {
+                d.recover();
+            }
+            catch (IOException | RuntimeException e)
+            {
+                d.close();
+                throw e;
+            }
+            return d;
+        }
+
+        private void recover() throws IOException
+        {
+            long size = channel.size();
+            if (size == 0) return;
+            ByteBuffer all = ByteBuffer.allocate((int) size);
+            while (all.hasRemaining() && channel.read(all, all.position()) >= 0)
+            {
+                // read until full
+            }
+            all.flip();
+
+            while (all.remaining() >= BATCH_HEADER_BYTES && all.get(all.position()) == BATCH)
+            {
+                int start = all.position();
+                all.position(start + 1);
+                int rows = all.getInt();
+                if (rows > all.remaining())
+                {
+                    all.position(start);
+                    break;
+                }
+                // Indexed only once the whole batch has parsed, so a torn one leaves no rows behind
+                int[] ids = new int[Math.max(0, rows)];
+                int[] rowAt = new int[ids.length];
+                long batchTs = lastTimestamp;
+                try
+                {
+                    for (int r = 0; r < rows; r++)
+                    {
+                        rowAt[r] = all.position();
+                        ids[r] = (int) readVarLong(all);
+                        batchTs = Math.max(batchTs, day * DAY_SECONDS + readVarLong(all));
+                        for (int k = 0; k < 4; k++)
+                        {
+                            readVarLong(all);
+                        }
+                    }
+                }
+                catch (IOException e)
+                {
+                    all.position(start);
+                    break;
+                }
+                for (int r = 0; r < rows; r++)
+                {
+                    index.computeIfAbsent(ids[r], k -> new Offsets()).add(rowAt[r]);
+                }
+                lastTimestamp = batchTs;
+                end = all.position();
+            }
+            if (end < size)
+            {
+                log.debug("Dropping {} torn bytes from {}", size - end, LocalDate.ofEpochDay(day));
+                channel.truncate(end);
+            }
+        }
+
+        void append(long timestamp, WikiDecoder.AggregateColumns bar) throws IOException
+        {
+            ByteBuffer buf = ByteBuffer.allocate(BATCH_HEADER_BYTES + bar.size * MAX_ROW_BYTES);
+            buf.put((byte) 0).putInt(bar.size);
+            long secOfDay = timestamp - day * DAY_SECONDS;
+            int[] rowAt = new int[bar.size];
+            for (int i = 0; i < bar.size; i++)
+            {
+                rowAt[i] = buf.position();
+                writeVarLong(buf, bar.ids[i]);
+                writeVarLong(buf, secOfDay);
+                writeVarLong(buf, Math.max(0, bar.avgLow[i]));
+                writeVarLong(buf, Math.max(0, bar.avgHigh[i]));
+                writeVarLong(buf, Math.max(0, bar.lowVolume[i]));
+                writeVarLong(buf, Math.max(0, bar.highVolume[i]));
+            }
+            buf.flip();
+            long at = end;
+            while (buf.hasRemaining())
+            {
+                channel.write(buf, at + buf.position());
+            }
+            // The rows must be on disk before the marker that vouches for them
+            channel.force(false);
+            channel.write(ByteBuffer.wrap(new byte[]{BATCH}), at);
+            channel.force(false);
+
+            for (int i = 0; i < bar.size; i++)
+            {
+                index.computeIfAbsent(bar.ids[i], k -> new Offsets()).add((int) (at + rowAt[i]));
+            }
+            end = at + buf.limit();
+            lastTimestamp = timestamp;
+        }
+
+        int[] itemIds()
+        {
+            return index.keySet().stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        void range(int itemId, long fromSec, long toSec, RowSink sink) throws IOException
+        {
+            Offsets rows = index.get(itemId);
+            if (rows == null) return;
+            ByteBuffer row = ByteBuffer.allocate(MAX_ROW_BYTES);
+            for (int r = 0; r < rows.size; r++)
+            {
+                row.clear();
+                long at = rows.at[r];
+                row.limit((int) Math.min(MAX_ROW_BYTES, end - at));
+                while (row.hasRemaining() && channel.read(row, at + row.position()) > 0)
+                {
+                    // read the whole row
+                }
+                row.flip();
+                readVarLong(row);
+                long ts = day * DAY_SECONDS + readVarLong(row);
+                long low = readVarLong(row);
+                long high = readVarLong(row);
+                int lowVolume = (int) readVarLong(row);
+                int highVolume = (int) readVarLong(row);
+                if (ts >= fromSec && ts < toSec)
+                {
+                    sink.accept(ts, low, high, lowVolume, highVolume);
+                }
+            }
+        }
+
+        void close()
+        {
+            try
+            {
+                channel.close();
+            }
+            catch (IOException e)
+            {
+                log.debug("Failed to close price log", e);
+            }
+        }
+    }
+
+    private static final class Offsets
+    {
+        int[] at = new int[32];
+        int size;
+
+        void add(int offset)
+        {
+            if (size == at.length)
+            {
+                at = Arrays.copyOf(at, size * 2);
+            }
+            at[size++] = offset;
+        }
+    }
+}
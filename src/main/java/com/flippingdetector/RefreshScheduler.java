@@ -0,0 +1,128 @@
+package com.flippingdetector;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs the suggestion recompute on a background thread when something it
+ * depends on changes. Triggers arriving within {@link #COALESCE_MS} of the
+ * first are folded into a single run, so the burst of slot events at login
+ * costs one recompute. A trigger arriving while a run is in progress schedules
+ * exactly one more.
+ */
+@Slf4j
+@Singleton
+class RefreshScheduler
+{
+    static final long COALESCE_MS = 300;
+
+    enum Trigger
+    {
+        SNAPSHOT,
+        OFFERS,
+        GP,
+        CONFIG
+    }
+
+    private final EnumSet<Trigger> pending = EnumSet.noneOf(Trigger.class);
+    private ScheduledExecutorService executor;
+    private Runnable job;
+
+    synchronized void start(Runnable job)
+    {
+        this.job = job;
+        executor = Executors.newSingleThreadScheduledExecutor(r ->
+        {
+            Thread t = new Thread(r, "flipping-detector-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    void stop()
+    {
+        ScheduledExecutorService ex;
+        synchronized (this)
+        {
+            ex = executor;
+            executor = null;
+            job = null;
+            pending.clear();
+        }
+        if (ex == null)
+        {
+            return;
+        }
+
+        // Wait out a run in progress, so the caller sees everything it wrote
+        ex.shutdownNow();
+        try
+        {
+            if (!ex.awaitTermination(2, TimeUnit.SECONDS))
+            {
+                log.warn("Suggestion refresh did not stop in time");
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Asks for a recompute. Cheap and safe from any thread.
+     */
+    void request(Trigger trigger)
+    {
+        synchronized (this)
+        {
+            boolean scheduled = !pending.isEmpty();
+            pending.add(trigger);
+            if (scheduled || executor == null)
+            {
+                return;
+            }
+
+            try
+            {
+                executor.schedule(this::run, COALESCE_MS, TimeUnit.MILLISECONDS);
+            }
+            catch (RejectedExecutionException e)
+            {
+                pending.clear();
+            }
+        }
+    }
+
+    private void run()
+    {
+        Set<Trigger> reasons;
+        Runnable task;
+        synchronized (this)
+        {
+            reasons = EnumSet.copyOf(pending);
+            pending.clear();
+            task = job;
+        }
+        if (task == null || reasons.isEmpty())
+        {
+            return;
+        }
+
+        log.debug("Recomputing suggestions for {}", reasons);
+        try
+        {
+            task.run();
+        }
+        catch (Exception e)
+        {
+            log.warn("Suggestion refresh failed", e);
+        }
+    }
+}
@@ -0,0 +1,437 @@
+package com.flippingdetector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.inject.Singleton;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.api.GameState;
+import net.runelite.api.GrandExchangeOffer;
+import net.runelite.client.RuneLite;
+import okhttp3.ResponseBody;
+
+/**
+ * Records a session for offline replay: every wiki payload as received, GE
+ * offer changes as the client reported them, game state changes and the GP
+ * used for suggestions. Each record carries its wall-clock time. The file is
+ * gzip compressed and sync-flushed after every record, so a crash loses at
+ * most the records still queued.
+ * <p>
+ * Callers only copy what they record into a queued task; compression and file
+ * I/O run on one writer thread, so the client thread never waits on the disk
+ * or on a payload being written.
+ * <p>
+ * Payloads are recorded wherever a response body is read, through
+ * {@link #body}, so the recorder sees exactly the bytes the decoder does.
+ */
+@Slf4j
+@Singleton
+class ReplayRecorder
+{
+    static final File DIR = new File(new File(RuneLite.RUNELITE_DIR, "flipping-detector"), "recordings");
+    private static final int MAGIC = 0x46445250; // "FDRP"
+    private static final int FORMAT_VERSION = 1;
+    private static final DateTimeFormatter FILE_NAME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    enum Kind
+    {
+        PAYLOAD,
+        OFFER,
+        GAME_STATE,
+        GP
+    }
+
+    private final Object lock = new Object();
+    private ExecutorService writer;
+    private volatile boolean recording;
+
+    // Confined to the writer thread
+    private DataOutputStream out;
+    private File file;
+    private long lastGp = -1;
+
+    boolean isRecording()
+    {
+        return recording;
+    }
+
+    /**
+     * Starts a new recording. The mapping table is rarely re-downloaded, so the
+     * cached copy is written first as if it had just been fetched.
+     */
+    void start(Map<Integer, MappingCache.MapMeta> mapping, GameState state)
+    {
+        synchronized (lock)
+        {
+            if (writer != null)
+            {
+                return;
+            }
+            writer = Executors.newSingleThreadExecutor(r ->
+            {
+                Thread t = new Thread(r, "flipping-detector-recorder");
+                t.setDaemon(true);
+                return t;
+            });
+            recording = true;
+        }
+
+        long now = System.currentTimeMillis();
+        String stateName = state.name();
+        execute(() ->
+        {
+            File f = new File(DIR, LocalDateTime.now().format(FILE_NAME) + ".fdr.gz");
+            Files.createDirectories(DIR.toPath());
+            out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(f), 8192, true), 65536));
+            file = f;
+            lastGp = -1;
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            if (!mapping.isEmpty())
+            {
+                writePayload(now, "mapping", mappingJson(mapping));
+            }
+            header(Kind.GAME_STATE, now);
+            out.writeUTF(stateName);
+            out.flush();
+            log.info("Recording session to {}", f);
+        });
+    }
+
+    /**
+     * Writes out queued records and stops the writer thread, waiting briefly for it.
+     */
+    void stop()
+    {
+        ExecutorService ex;
+        synchronized (lock)
+        {
+            ex = writer;
+            writer = null;
+            recording = false;
+        }
+        if (ex == null)
+        {
+            return;
+        }
+
+        ex.execute(() ->
+        {
+            if (out != null)
+            {
+                log.info("Stopped recording to {}", file);
+            }
+            closeQuietly();
+        });
+        ex.shutdown();
+        try
+        {
+            if (!ex.awaitTermination(2, TimeUnit.SECONDS))
+            {
+                ex.shutdownNow();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            ex.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns a stream over {@code body}. While recording the body is read in
+     * full and queued for recording under {@code endpoint} first.
+     */
+    InputStream body(String endpoint, ResponseBody body) throws IOException
+    {
+        if (!recording)
+        {
+            return body.byteStream();
+        }
+        byte[] bytes = body.bytes();
+        long now = System.currentTimeMillis();
+        submit(() -> writePayload(now, endpoint, bytes));
+        return new ByteArrayInputStream(bytes);
+    }
+
+    /**
+     * Queues an offer change. Called on the client thread, so the offer is
+     * copied here and everything else happens on the writer thread.
+     */
+    void offer(int slot, GrandExchangeOffer offer)
+    {
+        if (!recording)
+        {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        int itemId = offer.getItemId();
+        String state = offer.getState().name();
+        int sold = offer.getQuantitySold();
+        int total = offer.getTotalQuantity();
+        int price = offer.getPrice();
+        int spent = offer.getSpent();
+        submit(() ->
+        {
+            header(Kind.OFFER, now);
+            out.writeInt(slot);
+            out.writeInt(itemId);
+            out.writeUTF(state);
+            out.writeInt(sold);
+            out.writeInt(total);
+            out.writeInt(price);
+            out.writeInt(spent);
+            out.flush();
+        });
+    }
+
+    void gameState(GameState state)
+    {
+        if (!recording)
+        {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        String name = state.name();
+        submit(() ->
+        {
+            header(Kind.GAME_STATE, now);
+            out.writeUTF(name);
+            out.flush();
+        });
+    }
+
+    /**
+     * Records the GP suggestions were computed for, when it changed.
+     */
+    void gp(long gp)
+    {
+        if (!recording)
+        {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        submit(() ->
+        {
+            if (gp == lastGp)
+            {
+                return;
+            }
+            header(Kind.GP, now);
+            out.writeLong(gp);
+            out.flush();
+            lastGp = gp;
+        });
+    }
+
+    private void submit(IoTask task)
+    {
+        execute(() ->
+        {
+            // Records queued behind a failed write have no file to go to
+            if (out != null)
+            {
+                task.run();
+            }
+        });
+    }
+
+    private void execute(IoTask task)
+    {
+        ExecutorService ex;
+        synchronized (lock)
+        {
+            ex = writer;
+        }
+        if (ex == null)
+        {
+            return;
+        }
+
+        try
+        {
+            ex.execute(() ->
+            {
+                try
+                {
+                    task.run();
+                }
+                catch (IOException e)
+                {
+                    fail(e);
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            log.debug("Recorder stopped, dropping record");
+        }
+    }
+
+    private void writePayload(long timeMs, String endpoint, byte[] bytes) throws IOException
+    {
+        header(Kind.PAYLOAD, timeMs);
+        out.writeUTF(endpoint);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.flush();
+    }
+
+    private void header(Kind kind, long timeMs) throws IOException
+    {
+        out.writeByte(kind.ordinal());
+        out.writeLong(timeMs);
+    }
+
+    private void fail(IOException e)
+    {
+        log.warn("Failed to write recording, stopping", e);
+        recording = false;
+        closeQuietly();
+    }
+
+    private void closeQuietly()
+    {
+        if (out != null)
+        {
+            try
+            {
+                out.close();
+            }
+            catch (IOException e)
+            {
+                log.debug("Failed to close recording", e);
+            }
+        }
+        out = null;
+        file = null;
+    }
+
+    private interface IoTask
+    {
+        void run() throws IOException;
+    }
+
+    // Same shape as the wiki's /mapping, limited to the fields the decoder reads
+    private static byte[] mappingJson(Map<Integer, MappingCache.MapMeta> mapping)
+    {
+        StringBuilder sb = new StringBuilder(mapping.size() * 48).append('[');
+        for (Map.Entry<Integer, MappingCache.MapMeta> e : mapping.entrySet())
+        {
+            if (sb.length() > 1) sb.append(',');
+            sb.append("{\"id\":").append(e.getKey()).append(",\"limit\":").append(e.getValue().getLimit()).append(",\"name\":\"");
+            String name = e.getValue().getName();
+            for (int i = 0; i < name.length(); i++)
+            {
+                char c = name.charAt(i);
+                if (c == '"' || c == '\\') sb.append('\\');
+                sb.append(c);
+            }
+            sb.append("\"}");
+        }
+        return sb.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a recording in order. A file cut short by a crash is read up to the
+     * last complete record.
+     */
+    static List<Event> read(File f) throws IOException
+    {
+        List<Event> events = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(f)), 65536)))
+        {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION)
+            {
+                throw new IOException("Not a recording: " + f);
+            }
+            Kind[] kinds = Kind.values();
+            while (true)
+            {
+                int kind = in.read();
+                if (kind < 0)
+                {
+                    break;
+                }
+                if (kind >= kinds.length)
+                {
+                    throw new IOException("Unknown record kind " + kind);
+                }
+                long timeMs = in.readLong();
+                switch (kinds[kind])
+                {
+                    case PAYLOAD:
+                    {
+                        String endpoint = in.readUTF();
+                        byte[] bytes = new byte[in.readInt()];
+                        in.readFully(bytes);
+                        events.add(new Event(Kind.PAYLOAD, timeMs, endpoint, bytes, null, 0));
+                        break;
+                    }
+                    case OFFER:
+                    {
+                        int[] offer = new int[6];
+                        offer[0] = in.readInt();
+                        offer[1] = in.readInt();
+                        String state = in.readUTF();
+                        for (int i = 2; i < offer.length; i++)
+                        {
+                            offer[i] = in.readInt();
+                        }
+                        events.add(new Event(Kind.OFFER, timeMs, state, null, offer, 0));
+                        break;
+                    }
+                    case GAME_STATE:
+                        events.add(new Event(Kind.GAME_STATE, timeMs, in.readUTF(), null, null, 0));
+                        break;
+                    case GP:
+                        events.add(new Event(Kind.GP, timeMs, null, null, null, in.readLong()));
+                        break;
+                }
+            }
+        }
+        catch (EOFException e)
+        {
+            log.debug("Recording {} ends mid-record after {} events", f, events.size());
+        }
+        return events;
+    }
+
+    /**
+     * One recorded record. {@code text} is the endpoint, offer state or game
+     * state; {@code offer} holds slot, item id, sold, total, price and spent,
+     * with the state name in {@code text}.
+     */
+    @Value
+    static class Event
+    {
+        Kind kind;
+        long timeMs;
+        String text;
+        byte[] payload;
+        int[] offer;
+        long gp;
+    }
+}
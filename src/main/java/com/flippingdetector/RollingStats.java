@@ -0,0 +1,202 @@
+package com.flippingdetector;
+
+import java.util.Arrays;
+
+/**
+ * Streaming per-item price statistics fed by successive /latest polls. A poll
+ * only counts as a tick for an item when its trade time moved. Each item keeps
+ * an EWMA of the midpoint and a ring of its last {@link #WINDOW_TICKS} lows,
+ * highs and midpoints; the bands are medians and the volatility the spread of
+ * that window, so they follow the market instead of averaging the session.
+ * Everything lives in primitive arrays indexed by a per-item slot.
+ * <p>
+ * Not thread-safe: owned by the price thread.
+ */
+final class RollingStats
+{
+    private static final double EWMA_ALPHA = 0.2;
+    // About half an hour of ticks for an item that trades every poll
+    static final int WINDOW_TICKS = 32;
+    // Ticks needed before the bands and variance are trusted
+    static final int WARMUP_TICKS = 10;
+
+    private int[] slotById = new int[0]; // itemId -> slot + 1, 0 when untracked
+    private int slots;
+
+    private long[] lastLowTime = new long[0];
+    private long[] lastHighTime = new long[0];
+    private long[] ticks = new long[0];
+    private double[] ewma = new double[0];
+
+    private final Window lows = new Window();
+    private final Window highs = new Window();
+    private final Window mids = new Window();
+
+    void observe(int itemId, long low, long high, long lowTime, long highTime)
+    {
+        if (itemId < 0) return;
+        int s = slot(itemId);
+        boolean newLow = lowTime != lastLowTime[s] && low > 0;
+        boolean newHigh = highTime != lastHighTime[s] && high > 0;
+        if (newLow)
+        {
+            lastLowTime[s] = lowTime;
+            lows.add(s, low);
+        }
+        if (newHigh)
+        {
+            lastHighTime[s] = highTime;
+            highs.add(s, high);
+        }
+        if ((newLow || newHigh) && low > 0 && high > 0)
+        {
+            double mid = (low + high) / 2.0;
+            long n = ++ticks[s];
+            ewma[s] = n == 1 ? mid : ewma[s] + EWMA_ALPHA * (mid - ewma[s]);
+            mids.add(s, mid);
+        }
+    }
+
+    /**
+     * @return the median low price over the window, or 0 while warming up
+     */
+    long lowBand(int itemId)
+    {
+        int s = existingSlot(itemId);
+        return s < 0 || ticks[s] < WARMUP_TICKS ? 0 : Math.round(lows.median(s));
+    }
+
+    /**
+     * @return the median high price over the window, or 0 while warming up
+     */
+    long highBand(int itemId)
+    {
+        int s = existingSlot(itemId);
+        return s < 0 || ticks[s] < WARMUP_TICKS ? 0 : Math.round(highs.median(s));
+    }
+
+    double ewma(int itemId)
+    {
+        int s = existingSlot(itemId);
+        return s < 0 || ticks[s] == 0 ? Double.NaN : ewma[s];
+    }
+
+    /**
+     * @return sample standard deviation of the midpoint over the window relative
+     *         to its EWMA, in percent, or NaN while warming up
+     */
+    double volatilityPct(int itemId)
+    {
+        int s = existingSlot(itemId);
+        if (s < 0 || ticks[s] < WARMUP_TICKS) return Double.NaN;
+        return 100.0 * Math.sqrt(mids.variance(s)) / Math.max(1.0, ewma[s]);
+    }
+
+    private int existingSlot(int itemId)
+    {
+        return itemId >= 0 && itemId < slotById.length ? slotById[itemId] - 1 : -1;
+    }
+
+    private int slot(int itemId)
+    {
+        if (itemId >= slotById.length)
+        {
+            slotById = Arrays.copyOf(slotById, Math.max(itemId + 1, slotById.length * 2));
+        }
+        int s = slotById[itemId] - 1;
+        if (s >= 0) return s;
+
+        s = slots++;
+        if (s == ticks.length)
+        {
+            int cap = Math.max(1024, s * 2);
+            lastLowTime = Arrays.copyOf(lastLowTime, cap);
+            lastHighTime = Arrays.copyOf(lastHighTime, cap);
+            ticks = Arrays.copyOf(ticks, cap);
+            ewma = Arrays.copyOf(ewma, cap);
+            lows.ensureCapacity(cap);
+            highs.ensureCapacity(cap);
+            mids.ensureCapacity(cap);
+        }
+        slotById[itemId] = s + 1;
+        return s;
+    }
+
+    /**
+     * The last {@link #WINDOW_TICKS} values of many series at once: per slot, a
+     * ring in arrival order and the same values kept sorted, both in flat arrays.
+     * A new value replaces the oldest in both with one insertion-sort step, and
+     * the median is read off the sorted copy then. The variance comes from a
+     * running sum and sum of squares, kept relative to the slot's first value
+     * like {@link HistoryService}'s price series, and adjusted as values enter
+     * and leave the ring.
+     */
+    private static final class Window
+    {
+        private double[] ring = new double[0];
+        private double[] sorted = new double[0];
+        private long[] count = new long[0];
+        private double[] median = new double[0];
+        private double[] shift = new double[0];
+        private double[] sum = new double[0];
+        private double[] sumSq = new double[0];
+
+        void ensureCapacity(int slots)
+        {
+            ring = Arrays.copyOf(ring, slots * WINDOW_TICKS);
+            sorted = Arrays.copyOf(sorted, slots * WINDOW_TICKS);
+            count = Arrays.copyOf(count, slots);
+            median = Arrays.copyOf(median, slots);
+            shift = Arrays.copyOf(shift, slots);
+            sum = Arrays.copyOf(sum, slots);
+            sumSq = Arrays.copyOf(sumSq, slots);
+        }
+
+        void add(int slot, double x)
+        {
+            int o = slot * WINDOW_TICKS;
+            int at = (int) (count[slot] % WINDOW_TICKS);
+            int n = (int) Math.min(count[slot], WINDOW_TICKS);
+            if (n == 0) shift[slot] = x;
+            if (n == WINDOW_TICKS)
+            {
+                // Drop the value x replaces from the sorted copy and the sums
+                double old = ring[o + at];
+                int k = Arrays.binarySearch(sorted, o, o + n, old);
+                System.arraycopy(sorted, k + 1, sorted, k, o + n - k - 1);
+                n--;
+                old -= shift[slot];
+                sum[slot] -= old;
+                sumSq[slot] -= old * old;
+            }
+            ring[o + at] = x;
+            count[slot]++;
+
+            int k = o + n;
+            while (k > o && sorted[k - 1] > x)
+            {
+                sorted[k] = sorted[k - 1];
+                k--;
+            }
+            sorted[k] = x;
+            n++;
+            double d = x - shift[slot];
+            sum[slot] += d;
+            sumSq[slot] += d * d;
+
+            median[slot] = n % 2 == 1 ? sorted[o + n / 2] : (sorted[o + n / 2 - 1] + sorted[o + n / 2]) / 2;
+        }
+
+        double median(int slot)
+        {
+            return count[slot] == 0 ? Double.NaN : median[slot];
+        }
+
+        double variance(int slot)
+        {
+            long n = Math.min(count[slot], WINDOW_TICKS);
+            if (n < 2) return 0;
+            return Math.max(0, (sumSq[slot] - sum[slot] * sum[slot] / n) / (n - 1));
+        }
+    }
+}
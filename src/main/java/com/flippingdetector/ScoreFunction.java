@@ -0,0 +1,58 @@
+package com.flippingdetector;
+
+/**
+ * How candidates are ranked against each other. Higher scores rank first.
+ */
+public enum ScoreFunction
+{
+    EXPECTED_PROFIT("Expected profit")
+    {
+        @Override
+        double score(long buyPrice, int quantity, long expectedProfit, double fillHours)
+        {
+            return expectedProfit;
+        }
+    },
+    ROI("Return on investment")
+    {
+        @Override
+        double score(long buyPrice, int quantity, long expectedProfit, double fillHours)
+        {
+            return (double) expectedProfit / Math.max(1, buyPrice * quantity);
+        }
+    },
+    PROFIT_PER_HOUR("Profit per hour")
+    {
+        @Override
+        double score(long buyPrice, int quantity, long expectedProfit, double fillHours)
+        {
+            return Double.isInfinite(fillHours) ? 0 : expectedProfit / fillHours;
+        }
+    };
+
+    private final String label;
+
+    ScoreFunction(String label)
+    {
+        this.label = label;
+    }
+
+    /**
+     * Scores from primitives so the hot loop can reject items before building a candidate.
+     *
+     * @param expectedProfit profit after GE tax
+     * @param fillHours      estimated hours to buy and sell, see {@link FillModel#fillHours}
+     */
+    abstract double score(long buyPrice, int quantity, long expectedProfit, double fillHours);
+
+    double score(FlipCandidate c)
+    {
+        return score(c.getBuyPrice(), c.getQuantity(), c.getExpectedProfit(), c.getExpectedFillHours());
+    }
+
+    @Override
+    public String toString()
+    {
+        return label;
+    }
+}
@@ -0,0 +1,150 @@
+package com.flippingdetector;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Filters and scores a whole snapshot in parallel. The snapshot is split into
+ * fixed-size row ranges evaluated on a dedicated fork-join pool; each range
+ * keeps its own {@link TopK} and the partial selections are merged on join.
+ * Rows are filtered and scored from the primitive columns first, and a
+ * {@link FlipCandidate} is only built for rows that would enter the heap.
+ */
+@Singleton
+class ScoringPipeline
+{
+    private static final int CHUNK = 512;
+
+    private final FlippingDetectorConfig config;
+    private final Metrics metrics;
+    private final int parallelism;
+
+    private ForkJoinPool pool;
+
+    @Inject
+    ScoringPipeline(FlippingDetectorConfig config, Metrics metrics)
+    {
+        // Leave a core for the client itself
+        this(config, metrics, Math.min(4, Math.max(1, Runtime.getRuntime().availableProcessors() - 1)));
+    }
+
+    /**
+     * @param parallelism worker threads; 1 scans on the calling thread, for callers that are already parallel
+     */
+    ScoringPipeline(FlippingDetectorConfig config, Metrics metrics, int parallelism)
+    {
+        this.config = config;
+        this.metrics = metrics;
+        this.parallelism = parallelism;
+    }
+
+    void stop()
+    {
+        ForkJoinPool p;
+        synchronized (this)
+        {
+            p = pool;
+            pool = null;
+        }
+        if (p != null)
+        {
+            p.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the {@code capacity} best candidates in {@code snapshot} under {@code scoring}.
+     */
+    TopK<FlipCandidate> select(MarketSnapshot snapshot, OfferView offers, long perSlotBudget, int capacity, ScoreFunction scoring)
+    {
+        Chunk root = new Chunk(snapshot, offers, 0, snapshot.size(), perSlotBudget, capacity, scoring);
+        if (snapshot.size() <= CHUNK || parallelism <= 1)
+        {
+            return root.scan();
+        }
+        return pool().invoke(root);
+    }
+
+    private synchronized ForkJoinPool pool()
+    {
+        if (pool == null)
+        {
+            pool = new ForkJoinPool(parallelism, p ->
+            {
+                ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                t.setName("flipping-detector-scoring-" + t.getPoolIndex());
+                t.setDaemon(true);
+                return t;
+            }, null, false);
+        }
+        return pool;
+    }
+
+    private final class Chunk extends RecursiveTask<TopK<FlipCandidate>>
+    {
+        private final MarketSnapshot snapshot;
+        private final OfferView offers;
+        private final int from;
+        private final int to;
+        private final long perSlotBudget;
+        private final int capacity;
+        private final ScoreFunction scoring;
+
+        Chunk(MarketSnapshot snapshot, OfferView offers, int from, int to, long perSlotBudget, int capacity, ScoreFunction scoring)
+        {
+            this.snapshot = snapshot;
+            this.offers = offers;
+            this.from = from;
+            this.to = to;
+            this.perSlotBudget = perSlotBudget;
+            this.capacity = capacity;
+            this.scoring = scoring;
+        }
+
+        @Override
+        protected TopK<FlipCandidate> compute()
+        {
+            if (to - from <= CHUNK)
+            {
+                return scan();
+            }
+
+            int mid = (from + to) >>> 1;
+            Chunk left = new Chunk(snapshot, offers, from, mid, perSlotBudget, capacity, scoring);
+            Chunk right = new Chunk(snapshot, offers, mid, to, perSlotBudget, capacity, scoring);
+            left.fork();
+            TopK<FlipCandidate> best = right.compute();
+            best.addAll(left.join());
+            return best;
+        }
+
+        private TopK<FlipCandidate> scan()
+        {
+            TopK<FlipCandidate> best = new TopK<>(capacity);
+            boolean bands = config.priceFromBands();
+            int passed = 0, built = 0;
+            for (int i = from; i < to; i++)
+            {
+                if (!Filters.passes(snapshot, i, config, offers))
+                    continue;
+                passed++;
+                double score = FlipMath.score(snapshot, i, perSlotBudget, scoring, bands);
+                if (Double.isNaN(score) || !best.wouldAccept(score))
+                    continue;
+                FlipCandidate c = FlipMath.makeCandidate(snapshot.item(i), perSlotBudget, config).orElse(null);
+                if (c != null)
+                {
+                    built++;
+                    best.offer(scoring.score(c), c);
+                }
+            }
+            metrics.add(Metrics.Counter.ITEMS_CONSIDERED, to - from);
+            metrics.add(Metrics.Counter.ITEMS_PASSED, passed);
+            metrics.add(Metrics.Counter.CANDIDATES_BUILT, built);
+            return best;
+        }
+    }
+}
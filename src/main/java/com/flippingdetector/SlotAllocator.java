@@ -0,0 +1,234 @@
+package com.flippingdetector;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Splits the player's GP across open GE slots to maximise total expected
+ * profit, instead of giving every slot the same share. Each item can take one
+ * slot and at most its remaining buy-limit quota.
+ * <p>
+ * The objective follows the ranking. Ranked by profit per hour, an item only
+ * counts what can be bought and sold again within {@link #HORIZON_HOURS}, so
+ * total profit is profit per hour over that horizon. Ranked by ROI, allocations
+ * are compared on profit per GP committed rather than total profit.
+ * <p>
+ * Picking which items get the slots is a cardinality-constrained knapsack, which
+ * is solved approximately with a Lagrangian relaxation. A multiplier {@code λ}
+ * is put on GP. Item {@code i} is then worth {@code cap_i * (margin_i - λ * price_i)},
+ * and the best {@code slots} items by that value form a candidate set. The budget
+ * is then filled within that set in order of margin per GP. {@code λ} is bisected
+ * until the set's full cost fits the budget, and the best feasible allocation
+ * seen along the way wins. The search stops at a hard time budget and returns
+ * the best allocation found so far.
+ * <p>
+ * The first {@code slots} candidates of the pool are always tried as a set
+ * too, so a caller passing its fallback picks first never gets a worse result.
+ */
+final class SlotAllocator
+{
+    static final long TIME_BUDGET_NANOS = 3_000_000;
+    // One buy-limit window: the horizon a slot's flip is expected to complete in
+    static final double HORIZON_HOURS = BuyLimitWindow.WINDOW_MS / 3_600_000.0;
+    private static final int MAX_ITERATIONS = 48;
+
+    private SlotAllocator() {}
+
+    /**
+     * @param pool          candidates to choose from, each sized for the whole budget
+     * @param offers        supplies the quantity already bought in the current limit window
+     * @param respectLimits whether to cap each item at its remaining window quota
+     * @param rankBy        objective to allocate for and order of the result
+     * @return at most {@code slots} candidates with their allocated quantity and
+     *         profit, best first
+     */
+    static List<FlipCandidate> allocate(List<FlipCandidate> pool, OfferView offers, long gp, int slots, boolean respectLimits,
+                                        ScoreFunction rankBy)
+    {
+        long deadline = System.nanoTime() + TIME_BUDGET_NANOS;
+        int n = pool.size();
+        if (n == 0 || slots <= 0 || gp <= 0)
+        {
+            return List.of();
+        }
+
+        long[] price = new long[n];
+        long[] margin = new long[n];
+        long[] cap = new long[n];
+        double maxRatio = 0;
+        for (int i = 0; i < n; i++)
+        {
+            FlipCandidate c = pool.get(i);
+            price[i] = Math.max(1, c.getBuyPrice());
+            margin[i] = FlipMath.netMargin(c.getItemId(), c.getBuyPrice(), c.getSellPrice());
+            long quota = respectLimits ? Math.max(0, c.getBuyLimit() - offers.boughtInWindow(c.getItemId())) : c.getBuyLimit();
+            cap[i] = margin[i] > 0 ? Math.min(quota, gp / price[i]) : 0;
+            if (rankBy == ScoreFunction.PROFIT_PER_HOUR)
+            {
+                cap[i] = Math.min(cap[i], fillableWithin(c, HORIZON_HOURS));
+            }
+            if (cap[i] > 0) maxRatio = Math.max(maxRatio, (double) margin[i] / price[i]);
+        }
+        if (maxRatio == 0)
+        {
+            return List.of();
+        }
+
+        Solver solver = new Solver(price, margin, cap, gp, Math.min(slots, n), rankBy == ScoreFunction.ROI);
+        solver.evaluateLeading();
+        // λ = 0 ranks on raw profit capacity; past maxRatio every item is a net cost
+        solver.evaluate(0);
+        double lo = 0, hi = maxRatio;
+        for (int iter = 0; iter < MAX_ITERATIONS && System.nanoTime() < deadline; iter++)
+        {
+            double lambda = (lo + hi) / 2;
+            if (solver.evaluate(lambda) > gp)
+            {
+                lo = lambda;
+            }
+            else
+            {
+                hi = lambda;
+            }
+        }
+
+        List<FlipCandidate> picks = new ArrayList<>(solver.bestCount);
+        for (int s = 0; s < solver.bestCount; s++)
+        {
+            int i = solver.bestItems[s];
+            picks.add(FlipMath.withQuantity(pool.get(i), (int) solver.bestQty[s]));
+        }
+        picks.sort(Comparator.comparingDouble((FlipCandidate c) -> rankBy.score(c)).reversed());
+        return picks;
+    }
+
+    // Units of c that fill both ways within hours, going by its fill time at its own size
+    private static long fillableWithin(FlipCandidate c, double hours)
+    {
+        double fillHours = c.getExpectedFillHours();
+        if (Double.isInfinite(fillHours) || fillHours <= 0) return 0;
+        return (long) (c.getQuantity() * hours / fillHours);
+    }
+
+    private static final class Solver
+    {
+        private final long[] price;
+        private final long[] margin;
+        private final long[] cap;
+        private final long gp;
+        private final int slots;
+        private final boolean perGp;
+
+        // Scratch for one evaluation
+        private final int[] chosen;
+        private final double[] chosenValue;
+        private final long[] qty;
+
+        private double bestScore = -1;
+        private final int[] bestItems;
+        private final long[] bestQty;
+        private int bestCount;
+
+        Solver(long[] price, long[] margin, long[] cap, long gp, int slots, boolean perGp)
+        {
+            this.price = price;
+            this.margin = margin;
+            this.cap = cap;
+            this.gp = gp;
+            this.slots = slots;
+            this.perGp = perGp;
+            chosen = new int[slots];
+            chosenValue = new double[slots];
+            qty = new long[slots];
+            bestItems = new int[slots];
+            bestQty = new long[slots];
+        }
+
+        /**
+         * Builds the allocation for {@code lambda}, keeps it if it beats the best so far.
+         *
+         * @return GP the chosen set would need to fill every item to its cap
+         */
+        long evaluate(double lambda)
+        {
+            // Top-k by Lagrangian value via insertion into a short sorted array
+            int count = 0;
+            for (int i = 0; i < price.length; i++)
+            {
+                if (cap[i] <= 0) continue;
+                double v = cap[i] * (margin[i] - lambda * price[i]);
+                if (count == slots && v <= chosenValue[count - 1]) continue;
+                int at = count < slots ? count++ : count - 1;
+                while (at > 0 && chosenValue[at - 1] < v)
+                {
+                    chosen[at] = chosen[at - 1];
+                    chosenValue[at] = chosenValue[at - 1];
+                    at--;
+                }
+                chosen[at] = i;
+                chosenValue[at] = v;
+            }
+
+            return fill(count);
+        }
+
+        /**
+         * Tries the first items of the pool, in pool order, as the set.
+         */
+        void evaluateLeading()
+        {
+            int count = 0;
+            for (int i = 0; i < price.length && count < slots; i++)
+            {
+                if (cap[i] > 0) chosen[count++] = i;
+            }
+            fill(count);
+        }
+
+        // Fills the first count chosen items in order of margin per GP
+        private long fill(int count)
+        {
+            long required = 0;
+            for (int s = 0; s < count; s++)
+            {
+                required += cap[chosen[s]] * price[chosen[s]];
+                for (int t = s; t > 0 && ratioAbove(chosen[t], chosen[t - 1]); t--)
+                {
+                    int tmp = chosen[t];
+                    chosen[t] = chosen[t - 1];
+                    chosen[t - 1] = tmp;
+                }
+            }
+            long left = gp;
+            long profit = 0;
+            int used = 0;
+            for (int s = 0; s < count; s++)
+            {
+                int i = chosen[s];
+                long q = Math.min(cap[i], left / price[i]);
+                if (q <= 0) continue;
+                left -= q * price[i];
+                profit += q * margin[i];
+                chosen[used] = i;
+                qty[used++] = q;
+            }
+
+            double score = perGp ? (double) profit / Math.max(1, gp - left) : profit;
+            if (score > bestScore)
+            {
+                bestScore = score;
+                bestCount = used;
+                System.arraycopy(chosen, 0, bestItems, 0, used);
+                System.arraycopy(qty, 0, bestQty, 0, used);
+            }
+            return required;
+        }
+
+        private boolean ratioAbove(int a, int b)
+        {
+            // margin[a] / price[a] > margin[b] / price[b] without division
+            return (double) margin[a] * price[b] > (double) margin[b] * price[a];
+        }
+    }
+}
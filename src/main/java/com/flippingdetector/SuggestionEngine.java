@@ -0,0 +1,189 @@
+package com.flippingdetector;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import javax.inject.Inject;
+import lombok.Value;
+
+/**
+ * Keeps the best candidates ranked between refreshes. When a snapshot's delta
+ * follows on from the one last seen, only the changed items are re-filtered
+ * and re-scored; anything else (budget, config, a new {@link OfferView} or a
+ * gap in the snapshot chain) falls back to a full rebuild.
+ * <p>
+ * At most {@code maxCandidates} entries are kept. Once the reservoir has been
+ * truncated, {@code floor} bounds the score of anything left outside it, so
+ * everything scoring above the floor is guaranteed to be inside.
+ * <p>
+ * Not a singleton: each instance caches one budget, so callers ranking at two
+ * budgets hold one engine per budget.
+ */
+class SuggestionEngine
+{
+    private static final Comparator<Ranked> RANKING =
+            Comparator.comparingDouble((Ranked r) -> r.score).reversed()
+                    .thenComparingInt(r -> r.candidate.getItemId());
+
+    private final FlippingDetectorConfig config;
+    private final ScoringPipeline pipeline;
+    private final Metrics metrics;
+
+    private final Map<Integer, Ranked> byItem = new HashMap<>();
+    private final TreeSet<Ranked> ranking = new TreeSet<>(RANKING);
+    private double floor = Double.NEGATIVE_INFINITY;
+
+    private OfferView seenOffers;
+    private long seenSequence = -1;
+    private long seenBudget = -1;
+    private ConfigKey seenConfig;
+    private boolean stale = true;
+
+    @Inject
+    SuggestionEngine(FlippingDetectorConfig config, ScoringPipeline pipeline, Metrics metrics)
+    {
+        this.config = config;
+        this.pipeline = pipeline;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Forces the next call to {@link #top} to rebuild from scratch.
+     */
+    void invalidateAll()
+    {
+        stale = true;
+    }
+
+    /**
+     * Brings the ranking up to date with {@code snapshot} and returns the best
+     * {@code k} candidates.
+     */
+    List<FlipCandidate> top(MarketSnapshot snapshot, OfferView offers, long perSlotBudget, int k)
+    {
+        ConfigKey cfg = configKey();
+        int capacity = Math.max(k, config.maxCandidates());
+        ScoreFunction scoring = config.rankBy();
+        long t = metrics.start();
+        boolean sameInputs = !stale && offers == seenOffers && perSlotBudget == seenBudget && cfg.equals(seenConfig);
+        if (!sameInputs || (snapshot.sequence() != seenSequence && snapshot.baseSequence() != seenSequence))
+        {
+            rebuild(snapshot, offers, perSlotBudget, capacity, scoring);
+        }
+        else if (snapshot.sequence() != seenSequence)
+        {
+            metrics.increment(Metrics.Counter.RANK_INCREMENTAL);
+            metrics.add(Metrics.Counter.ITEMS_CONSIDERED, snapshot.changedIds().length);
+            for (int itemId : snapshot.changedIds())
+            {
+                rescore(snapshot, offers, itemId, perSlotBudget, capacity, scoring);
+            }
+            // Removals may have drained the reservoir below what we need; refill from scratch
+            if (ranking.size() < k && floor != Double.NEGATIVE_INFINITY)
+            {
+                rebuild(snapshot, offers, perSlotBudget, capacity, scoring);
+            }
+        }
+
+        metrics.stop(Metrics.Stage.RANK, t);
+
+        stale = false;
+        seenOffers = offers;
+        seenSequence = snapshot.sequence();
+        seenBudget = perSlotBudget;
+        seenConfig = cfg;
+
+        List<FlipCandidate> picks = new ArrayList<>(Math.max(0, k));
+        for (Ranked r : ranking)
+        {
+            if (picks.size() >= k) break;
+            picks.add(r.candidate);
+        }
+        return picks;
+    }
+
+    private void rebuild(MarketSnapshot snapshot, OfferView offers, long perSlotBudget, int capacity, ScoreFunction scoring)
+    {
+        metrics.increment(Metrics.Counter.RANK_REBUILDS);
+        TopK<FlipCandidate> best = pipeline.select(snapshot, offers, perSlotBudget, capacity, scoring);
+
+        byItem.clear();
+        ranking.clear();
+        floor = best.truncated() && best.size() > 0 ? best.minScore() : Double.NEGATIVE_INFINITY;
+        for (FlipCandidate c : best.drainDescending())
+        {
+            put(new Ranked(c, scoring.score(c)));
+        }
+    }
+
+    private void rescore(MarketSnapshot snapshot, OfferView offers, int itemId, long perSlotBudget, int capacity, ScoreFunction scoring)
+    {
+        Ranked old = byItem.remove(itemId);
+        if (old != null)
+        {
+            ranking.remove(old);
+        }
+
+        int i = snapshot.indexOf(itemId);
+        if (i < 0 || !Filters.passes(snapshot, i, config, offers))
+            return;
+        metrics.increment(Metrics.Counter.ITEMS_PASSED);
+        FlipCandidate c = FlipMath.makeCandidate(snapshot.item(i), perSlotBudget, config).orElse(null);
+        if (c == null)
+            return;
+        metrics.increment(Metrics.Counter.CANDIDATES_BUILT);
+
+        double score = scoring.score(c);
+        if (score <= floor)
+            return;
+        put(new Ranked(c, score));
+        while (ranking.size() > capacity)
+        {
+            Ranked evicted = ranking.pollLast();
+            byItem.remove(evicted.candidate.getItemId());
+            floor = Math.max(floor, evicted.score);
+        }
+    }
+
+    private void put(Ranked r)
+    {
+        byItem.put(r.candidate.getItemId(), r);
+        ranking.add(r);
+    }
+
+    // Everything Filters/FlipMath/ranking read from config; a change invalidates every cached score
+    private ConfigKey configKey()
+    {
+        return new ConfigKey(config.minMarginPct(), config.excludeLowVolume(), config.minDailyVolume(),
+                config.maxVolatilityPct(), config.respectBuyLimits(), config.maxCandidates(), config.rankBy(),
+                config.priceFromBands());
+    }
+
+    @Value
+    private static class ConfigKey
+    {
+        double minMarginPct;
+        boolean excludeLowVolume;
+        int minDailyVolume;
+        double maxVolatilityPct;
+        boolean respectBuyLimits;
+        int maxCandidates;
+        ScoreFunction rankBy;
+        boolean priceFromBands;
+    }
+
+    private static final class Ranked
+    {
+        final FlipCandidate candidate;
+        final double score;
+
+        Ranked(FlipCandidate candidate, double score)
+        {
+            this.candidate = candidate;
+            this.score = score;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.flippingdetector;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.inject.Inject;
+
+/**
+ * Picks one suggestion per open slot from a snapshot: ranks candidates and,
+ * when allocation is optimised, decides how much GP each slot gets. Keeps the
+ * engines' incremental state, so a planner should be fed consecutive
+ * snapshots from a single thread.
+ */
+class SuggestionPlanner
+{
+    // Candidates handed to the allocator; it picks which of them get the open slots
+    private static final int ALLOCATION_POOL = 64;
+
+    private final FlippingDetectorConfig config;
+    private final SuggestionEngine suggestionEngine;
+    // Ranks at the even per-slot budget, seeding the allocator's pool
+    private final SuggestionEngine perSlotEngine;
+    private final Metrics metrics;
+
+    @Inject
+    SuggestionPlanner(FlippingDetectorConfig config, SuggestionEngine suggestionEngine, SuggestionEngine perSlotEngine, Metrics metrics)
+    {
+        this.config = config;
+        this.suggestionEngine = suggestionEngine;
+        this.perSlotEngine = perSlotEngine;
+        this.metrics = metrics;
+    }
+
+    void invalidateAll()
+    {
+        suggestionEngine.invalidateAll();
+        perSlotEngine.invalidateAll();
+    }
+
+    /**
+     * @return at most {@code openSlots} picks, best first
+     */
+    List<FlipCandidate> plan(MarketSnapshot snapshot, OfferView offers, long userGp, int openSlots)
+    {
+        if (openSlots <= 0)
+        {
+            return List.of();
+        }
+
+        // Filter and rank candidates; only items that moved since the last snapshot are re-scored
+        if (!config.optimizeAllocation())
+        {
+            long perSlotBudget = config.evenlyAllocate() && userGp > 0 ? userGp / openSlots : userGp;
+            return suggestionEngine.top(snapshot, offers, perSlotBudget, openSlots);
+        }
+
+        // Pool the best at an even split (first, as the allocator's fallback) with the best
+        // when one slot may take all GP, and let the allocator decide each slot's share
+        int poolSize = Math.max(openSlots, ALLOCATION_POOL);
+        Map<Integer, FlipCandidate> pool = new LinkedHashMap<>(poolSize * 4);
+        for (FlipCandidate c : perSlotEngine.top(snapshot, offers, userGp / openSlots, poolSize))
+        {
+            pool.put(c.getItemId(), c);
+        }
+        for (FlipCandidate c : suggestionEngine.top(snapshot, offers, userGp, poolSize))
+        {
+            pool.putIfAbsent(c.getItemId(), c);
+        }
+        long t = metrics.start();
+        List<FlipCandidate> picks = SlotAllocator.allocate(new ArrayList<>(pool.values()), offers, userGp, openSlots, config.respectBuyLimits(),
+                config.rankBy());
+        metrics.stop(Metrics.Stage.ALLOCATE, t);
+        return picks;
+    }
+}
@@ -0,0 +1,137 @@
+package com.flippingdetector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the {@code capacity} highest-scoring items offered to it in a binary
+ * min-heap, so selecting the top K of N costs O(N log K) and O(K) memory.
+ */
+final class TopK<T>
+{
+    private final int capacity;
+    private final double[] scores;
+    private final Object[] items;
+    private int size;
+    private long offered;
+
+    TopK(int capacity)
+    {
+        this.capacity = Math.max(0, capacity);
+        this.scores = new double[this.capacity];
+        this.items = new Object[this.capacity];
+    }
+
+    int size() { return size; }
+
+    /**
+     * @return true once more items were offered than the heap could hold
+     */
+    boolean truncated() { return offered > capacity; }
+
+    /**
+     * Lowest score currently kept; only meaningful when {@link #size()} > 0.
+     */
+    double minScore() { return scores[0]; }
+
+    /**
+     * Cheap pre-check so callers can skip building an item that would be rejected.
+     */
+    boolean wouldAccept(double score)
+    {
+        return size < capacity || (capacity > 0 && score > scores[0]);
+    }
+
+    void offer(double score, T item)
+    {
+        offered++;
+        if (size < capacity)
+        {
+            scores[size] = score;
+            items[size] = item;
+            siftUp(size++);
+        }
+        else if (capacity > 0 && score > scores[0])
+        {
+            scores[0] = score;
+            items[0] = item;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Adds everything kept by {@code other}; used to merge partial selections.
+     */
+    void addAll(TopK<? extends T> other)
+    {
+        for (int i = 0; i < other.size; i++)
+        {
+            @SuppressWarnings("unchecked")
+            T item = (T) other.items[i];
+            offer(other.scores[i], item);
+        }
+        // The other heap's own rejections still count as truncation
+        offered += Math.max(0, other.offered - other.size);
+    }
+
+    /**
+     * Empties the heap, returning its items ordered from highest to lowest score.
+     */
+    @SuppressWarnings("unchecked")
+    List<T> drainDescending()
+    {
+        Object[] out = new Object[size];
+        for (int i = size - 1; i >= 0; i--)
+        {
+            out[i] = items[0];
+            size--;
+            scores[0] = scores[size];
+            items[0] = items[size];
+            items[size] = null;
+            siftDown(0);
+        }
+        offered = 0;
+
+        List<T> list = new ArrayList<>(out.length);
+        for (Object o : out)
+        {
+            list.add((T) o);
+        }
+        return list;
+    }
+
+    private void siftUp(int i)
+    {
+        while (i > 0)
+        {
+            int parent = (i - 1) >>> 1;
+            if (scores[parent] <= scores[i]) break;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i)
+    {
+        while (true)
+        {
+            int l = 2 * i + 1;
+            if (l >= size) break;
+            int r = l + 1;
+            int min = r < size && scores[r] < scores[l] ? r : l;
+            if (scores[i] <= scores[min]) break;
+            swap(i, min);
+            i = min;
+        }
+    }
+
+    private void swap(int a, int b)
+    {
+        double s = scores[a];
+        scores[a] = scores[b];
+        scores[b] = s;
+        Object o = items[a];
+        items[a] = items[b];
+        items[b] = o;
+    }
+}
@@ -0,0 +1,51 @@
+package com.flippingdetector;
+
+import lombok.Value;
+import net.runelite.api.GrandExchangeOfferState;
+
+/**
+ * Checks the player's in-flight offers against the market. A buy below the
+ * latest instant-sell price has been outbid, since sellers fill the higher
+ * bids first; a sell above the latest instant-buy price has been undercut.
+ * The suggested reprice is one coin past the market, and fill times are for
+ * the units still outstanding.
+ */
+final class UndercutMonitor
+{
+    private UndercutMonitor() {}
+
+    /**
+     * @return null unless the offer is buying or selling an item the snapshot prices
+     */
+    static Check check(OfferTracker.OfferRecord r, MarketSnapshot s)
+    {
+        boolean buying = r.getState() == GrandExchangeOfferState.BUYING;
+        if (s == null || !buying && r.getState() != GrandExchangeOfferState.SELLING)
+        {
+            return null;
+        }
+        int i = s.indexOf(r.getItemId());
+        if (i < 0) return null;
+        long market = buying ? s.latestLow(i) : s.latestHigh(i);
+        if (market <= 0) return null;
+
+        double hours = FillModel.sideFillHours(r.getQuantityTotal() - r.getQuantityTraded(), s.unitsPerHour(i));
+        boolean beaten = buying ? r.getPriceEach() < market : r.getPriceEach() > market;
+        if (!beaten)
+        {
+            return new Check(false, market, r.getPriceEach(), hours);
+        }
+        return new Check(true, market, buying ? market + 1 : Math.max(1, market - 1), hours);
+    }
+
+    @Value
+    static class Check
+    {
+        boolean beaten;
+        long marketPrice;
+        // The offer's own price unless beaten
+        long suggestedPrice;
+        // Hours to fill what is left at the suggested price
+        double fillHours;
+    }
+}
@@ -0,0 +1,177 @@
+package com.flippingdetector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.RuneLite;
+
+/**
+ * The last snapshot and the picks shown for it, kept on disk so the panel has
+ * something to show the moment the plugin starts. Written every few minutes
+ * from the refresh thread and once more on shutdown; anything older than a
+ * day is ignored.
+ */
+@Slf4j
+@Singleton
+class WarmStart
+{
+    private static final File FILE = new File(new File(RuneLite.RUNELITE_DIR, "flipping-detector"), "warm.bin");
+    private static final int FORMAT_VERSION = 2;
+    private static final long SAVE_INTERVAL_MS = Duration.ofMinutes(5).toMillis();
+    private static final long MAX_AGE_MS = Duration.ofDays(1).toMillis();
+
+    private final File file;
+    private long savedAtMs;
+
+    @Inject
+    WarmStart()
+    {
+        this(FILE);
+    }
+
+    WarmStart(File file)
+    {
+        this.file = file;
+    }
+
+    /**
+     * @return what was saved last, or null if nothing recent enough could be read
+     */
+    State load(long nowMs)
+    {
+        if (!file.isFile())
+        {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+        {
+            if (in.readInt() != FORMAT_VERSION)
+            {
+                return null;
+            }
+            long saved = in.readLong();
+            if (nowMs - saved > MAX_AGE_MS)
+            {
+                return null;
+            }
+            long userGp = in.readLong();
+            int openSlots = in.readInt();
+
+            int size = in.readInt();
+            MarketSnapshot.Builder b = MarketSnapshot.builder(size);
+            for (int i = 0; i < size; i++)
+            {
+                b.add(in.readInt(), in.readUTF().intern(), in.readLong(), in.readLong(), in.readInt(), in.readInt(),
+                        in.readDouble(), in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readDouble(), in.readInt());
+            }
+            MarketSnapshot snapshot = b.build(null);
+
+            int count = in.readInt();
+            List<FlipCandidate> picks = new ArrayList<>(count);
+            for (int i = 0; i < count; i++)
+            {
+                picks.add(new FlipCandidate(in.readInt(), in.readUTF(), in.readLong(), in.readLong(), in.readInt(), in.readLong(),
+                        in.readInt(), in.readInt(), in.readDouble(), in.readDouble(), in.readLong()));
+            }
+            log.debug("Loaded {} items and {} picks saved {}s ago", size, count, (nowMs - saved) / 1000);
+            return new State(saved, snapshot, picks, userGp, openSlots);
+        }
+        catch (IOException e)
+        {
+            log.warn("Failed to read warm-start cache", e);
+            return null;
+        }
+    }
+
+    /**
+     * Saves unless the last save was under {@link #SAVE_INTERVAL_MS} ago.
+     */
+    synchronized void saveIfDue(MarketSnapshot snapshot, List<FlipCandidate> picks, long userGp, int openSlots, long nowMs)
+    {
+        if (nowMs - savedAtMs >= SAVE_INTERVAL_MS)
+        {
+            save(snapshot, picks, userGp, openSlots, nowMs);
+        }
+    }
+
+    synchronized void save(MarketSnapshot snapshot, List<FlipCandidate> picks, long userGp, int openSlots, long nowMs)
+    {
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try
+        {
+            Files.createDirectories(file.getParentFile().toPath());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 64 * 1024)))
+            {
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(nowMs);
+                out.writeLong(userGp);
+                out.writeInt(openSlots);
+
+                out.writeInt(snapshot.size());
+                for (int i = 0; i < snapshot.size(); i++)
+                {
+                    out.writeInt(snapshot.itemId(i));
+                    out.writeUTF(snapshot.name(i));
+                    out.writeLong(snapshot.latestLow(i));
+                    out.writeLong(snapshot.latestHigh(i));
+                    out.writeInt(snapshot.dailyVolume(i));
+                    out.writeInt(snapshot.buyLimit(i));
+                    out.writeDouble(snapshot.volatilityPct(i));
+                    out.writeLong(snapshot.lowTime(i));
+                    out.writeLong(snapshot.highTime(i));
+                    out.writeLong(snapshot.lowBand(i));
+                    out.writeLong(snapshot.highBand(i));
+                    out.writeDouble(snapshot.unitsPerHour(i));
+                    out.writeInt(snapshot.hourlyVolume(i));
+                }
+
+                out.writeInt(picks.size());
+                for (FlipCandidate c : picks)
+                {
+                    out.writeInt(c.getItemId());
+                    out.writeUTF(c.getName());
+                    out.writeLong(c.getBuyPrice());
+                    out.writeLong(c.getSellPrice());
+                    out.writeInt(c.getQuantity());
+                    out.writeLong(c.getExpectedProfit());
+                    out.writeInt(c.getDailyVolume());
+                    out.writeInt(c.getBuyLimit());
+                    out.writeDouble(c.getVolatilityPct());
+                    out.writeDouble(c.getExpectedFillHours());
+                    out.writeLong(c.getGpPerHour());
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            savedAtMs = nowMs;
+        }
+        catch (IOException e)
+        {
+            log.warn("Failed to write warm-start cache", e);
+        }
+    }
+
+    @Value
+    static class State
+    {
+        long savedAtMs;
+        MarketSnapshot snapshot;
+        List<FlipCandidate> picks;
+        long userGp;
+        int openSlots;
+    }
+}
@@ -0,0 +1,372 @@
+package com.flippingdetector;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.Notifier;
+import net.runelite.client.callback.ClientThread;
+
+/**
+ * Price alerts for watched items, from the "watchlist" config: one rule per
+ * line, an item name or ID, a metric, {@code <} or {@code >} and a value, e.g.
+ * <pre>
+ * Abyssal whip margin &gt; 50k
+ * 11832 low &lt; 12.5m
+ * Cannonball volume &gt; 3x
+ * </pre>
+ * Volume is the last hour's traded units as a multiple of the 24h hourly average.
+ * <p>
+ * Rules are indexed by item and, within an item, held per metric in sorted
+ * threshold arrays, so a snapshot costs one lookup per changed item plus a
+ * binary search for each metric the item has rules on. A rule alerts when the
+ * value crosses into it: the thresholds crossed are exactly those between the
+ * old and new value. Each rule then stays quiet for a cooldown, the alerts of
+ * one snapshot go out as a single notification, and notifications are capped
+ * per window with the overflow counted into the next one.
+ * <p>
+ * Not thread-safe: driven from the price thread.
+ */
+@Slf4j
+@Singleton
+class Watchlist
+{
+    private static final long COOLDOWN_MS = Duration.ofMinutes(30).toMillis();
+    private static final long WINDOW_MS = Duration.ofMinutes(10).toMillis();
+    private static final int MAX_PER_WINDOW = 5;
+
+    enum Metric
+    {
+        LOW, HIGH, MARGIN, VOLUME
+    }
+
+    private final FlippingDetectorConfig config;
+    private final Notifier notifier;
+    private final ClientThread clientThread;
+
+    private String compiledText;
+    private Map<Integer, ItemRules> items = new HashMap<>();
+    private long lastSequence = -1;
+    private final long[] sentAt = new long[MAX_PER_WINDOW];
+    private int sent;
+    private int suppressed;
+
+    @Inject
+    Watchlist(FlippingDetectorConfig config, Notifier notifier, ClientThread clientThread)
+    {
+        this.config = config;
+        this.notifier = notifier;
+        this.clientThread = clientThread;
+    }
+
+    void onSnapshot(MarketSnapshot s)
+    {
+        onSnapshot(s, System.currentTimeMillis());
+    }
+
+    void onSnapshot(MarketSnapshot s, long nowMs)
+    {
+        String text = config.watchlist();
+        boolean full = s.baseSequence() != lastSequence;
+        if (!text.equals(compiledText))
+        {
+            compiledText = text;
+            compile(text, s);
+            full = true;
+        }
+        lastSequence = s.sequence();
+        if (items.isEmpty())
+        {
+            return;
+        }
+
+        List<String> alerts = new ArrayList<>();
+        if (full)
+        {
+            for (ItemRules r : items.values())
+            {
+                evaluate(r, s, nowMs, alerts);
+            }
+        }
+        else
+        {
+            for (int id : s.changedIds())
+            {
+                ItemRules r = items.get(id);
+                if (r != null)
+                {
+                    evaluate(r, s, nowMs, alerts);
+                }
+            }
+        }
+        deliver(alerts, nowMs);
+    }
+
+    private void evaluate(ItemRules r, MarketSnapshot s, long nowMs, List<String> alerts)
+    {
+        int i = s.indexOf(r.itemId);
+        if (i < 0) return;
+        for (Metric m : Metric.values())
+        {
+            Thresholds t = r.byMetric[m.ordinal()];
+            if (t == null) continue;
+            double v = value(m, s, i);
+            if (Double.isNaN(v)) continue;
+            double old = r.last[m.ordinal()];
+            r.last[m.ordinal()] = v;
+
+            // Rules for value > threshold newly hold for thresholds in [old, v)
+            int from = Double.isNaN(old) ? 0 : lowerBound(t.above, old);
+            for (int k = from; k < lowerBound(t.above, v); k++)
+            {
+                fire(t.aboveRules[k], s.name(i), v, nowMs, alerts);
+            }
+            // Rules for value < threshold newly hold for thresholds in (v, old]
+            int to = Double.isNaN(old) ? t.below.length : upperBound(t.below, old);
+            for (int k = upperBound(t.below, v); k < to; k++)
+            {
+                fire(t.belowRules[k], s.name(i), v, nowMs, alerts);
+            }
+        }
+    }
+
+    private static double value(Metric m, MarketSnapshot s, int i)
+    {
+        long low = s.latestLow(i);
+        long high = s.latestHigh(i);
+        switch (m)
+        {
+            case LOW:
+                return low > 0 ? low : Double.NaN;
+            case HIGH:
+                return high > 0 ? high : Double.NaN;
+            case MARGIN:
+                return low > 0 && high > 0 ? FlipMath.netMargin(s.itemId(i), low, high) : Double.NaN;
+            case VOLUME:
+                int daily = s.dailyVolume(i);
+                int hourly = s.hourlyVolume(i);
+                return daily > 0 && hourly >= 0 ? hourly / (daily / 24.0) : Double.NaN;
+            default:
+                throw new IllegalArgumentException(m.name());
+        }
+    }
+
+    private static void fire(Rule rule, String name, double value, long nowMs, List<String> alerts)
+    {
+        if (rule.firedAt != 0 && nowMs - rule.firedAt < COOLDOWN_MS) return;
+        rule.firedAt = nowMs;
+        alerts.add(name + " " + rule.metric.name().toLowerCase(Locale.ROOT) + " " + format(rule.metric, value)
+                + (rule.above ? " is above " : " is below ") + format(rule.metric, rule.threshold));
+    }
+
+    private void deliver(List<String> alerts, long nowMs)
+    {
+        if (alerts.isEmpty()) return;
+        alerts.forEach(a -> log.debug("Watchlist: {}", a));
+
+        // sentAt is a ring of the last MAX_PER_WINDOW notification times
+        long oldest = sentAt[sent % MAX_PER_WINDOW];
+        if (sent >= MAX_PER_WINDOW && nowMs - oldest < WINDOW_MS)
+        {
+            suppressed += alerts.size();
+            return;
+        }
+        sentAt[sent++ % MAX_PER_WINDOW] = nowMs;
+
+        int more = alerts.size() - 1 + suppressed;
+        suppressed = 0;
+        String message = "Watchlist: " + alerts.get(0) + (more > 0 ? " (+" + more + " more)" : "");
+        clientThread.invokeLater(() -> notifier.notify(message));
+    }
+
+    private void compile(String text, MarketSnapshot s)
+    {
+        Map<String, Integer> byName = new HashMap<>(s.size() * 2);
+        for (int i = 0; i < s.size(); i++)
+        {
+            byName.putIfAbsent(s.name(i).toLowerCase(Locale.ROOT), s.itemId(i));
+        }
+
+        Map<Integer, List<Rule>> rules = new HashMap<>();
+        for (String line : text.split("[\\r\\n;]+"))
+        {
+            line = line.trim();
+            if (line.isEmpty()) continue;
+            Rule rule = parse(line, byName);
+            if (rule == null)
+            {
+                log.warn("Ignoring watchlist rule \"{}\"", line);
+                continue;
+            }
+            rules.computeIfAbsent(rule.itemId, k -> new ArrayList<>()).add(rule);
+        }
+
+        Map<Integer, ItemRules> compiled = new HashMap<>(rules.size() * 2);
+        for (Map.Entry<Integer, List<Rule>> e : rules.entrySet())
+        {
+            ItemRules r = new ItemRules(e.getKey());
+            for (Metric m : Metric.values())
+            {
+                r.byMetric[m.ordinal()] = Thresholds.of(e.getValue(), m);
+            }
+            compiled.put(e.getKey(), r);
+        }
+        items = compiled;
+        log.debug("Watching {} items", items.size());
+    }
+
+    // "<item> <metric> <|> <value>", where the item may itself contain spaces
+    private static Rule parse(String line, Map<String, Integer> byName)
+    {
+        String[] words = line.split("\\s+");
+        if (words.length < 4) return null;
+        String op = words[words.length - 2];
+        if (!op.equals("<") && !op.equals(">")) return null;
+
+        Metric metric;
+        try
+        {
+            metric = Metric.valueOf(words[words.length - 3].toUpperCase(Locale.ROOT));
+        }
+        catch (IllegalArgumentException e)
+        {
+            return null;
+        }
+        double threshold = parseValue(words[words.length - 1], metric);
+        if (Double.isNaN(threshold)) return null;
+
+        String item = String.join(" ", Arrays.copyOf(words, words.length - 3));
+        Integer id;
+        if (item.chars().allMatch(Character::isDigit))
+        {
+            try
+            {
+                id = Integer.valueOf(item);
+            }
+            catch (NumberFormatException e)
+            {
+                return null;
+            }
+        }
+        else
+        {
+            id = byName.get(item.toLowerCase(Locale.ROOT));
+        }
+        return id == null ? null : new Rule(id, metric, op.equals(">"), threshold);
+    }
+
+    private static double parseValue(String v, Metric metric)
+    {
+        v = v.toLowerCase(Locale.ROOT).replace(",", "").replace("_", "");
+        double scale = 1;
+        char unit = v.isEmpty() ? 0 : v.charAt(v.length() - 1);
+        if ((metric == Metric.VOLUME && unit == 'x') || unit == 'k' || unit == 'm' || unit == 'b')
+        {
+            scale = unit == 'k' ? 1e3 : unit == 'm' ? 1e6 : unit == 'b' ? 1e9 : 1;
+            v = v.substring(0, v.length() - 1);
+        }
+        try
+        {
+            return Double.parseDouble(v) * scale;
+        }
+        catch (NumberFormatException e)
+        {
+            return Double.NaN;
+        }
+    }
+
+    private static String format(Metric m, double v)
+    {
+        return m == Metric.VOLUME ? String.format(Locale.ROOT, "%.1fx", v) : PanelController.gp(Math.round(v));
+    }
+
+    // First index whose threshold is >= v
+    private static int lowerBound(double[] a, double v)
+    {
+        int lo = 0, hi = a.length;
+        while (lo < hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] < v) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // First index whose threshold is > v
+    private static int upperBound(double[] a, double v)
+    {
+        int lo = 0, hi = a.length;
+        while (lo < hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] <= v) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private static final class Rule
+    {
+        final int itemId;
+        final Metric metric;
+        final boolean above;
+        final double threshold;
+        long firedAt;
+
+        Rule(int itemId, Metric metric, boolean above, double threshold)
+        {
+            this.itemId = itemId;
+            this.metric = metric;
+            this.above = above;
+            this.threshold = threshold;
+        }
+    }
+
+    private static final class ItemRules
+    {
+        final int itemId;
+        final Thresholds[] byMetric = new Thresholds[Metric.values().length];
+        // Value at the last evaluation per metric, NaN before the first
+        final double[] last = new double[Metric.values().length];
+
+        ItemRules(int itemId)
+        {
+            this.itemId = itemId;
+            Arrays.fill(last, Double.NaN);
+        }
+    }
+
+    // One metric's rules for one item, each direction sorted by threshold
+    private static final class Thresholds
+    {
+        final double[] above;
+        final Rule[] aboveRules;
+        final double[] below;
+        final Rule[] belowRules;
+
+        private Thresholds(Rule[] aboveRules, Rule[] belowRules)
+        {
+            this.aboveRules = aboveRules;
+            this.belowRules = belowRules;
+            above = Arrays.stream(aboveRules).mapToDouble(r -> r.threshold).toArray();
+            below = Arrays.stream(belowRules).mapToDouble(r -> r.threshold).toArray();
+        }
+
+        static Thresholds of(List<Rule> rules, Metric m)
+        {
+            Rule[] above = rules.stream().filter(r -> r.metric == m && r.above)
+                    .sorted(Comparator.comparingDouble(r -> r.threshold)).toArray(Rule[]::new);
+            Rule[] below = rules.stream().filter(r -> r.metric == m && !r.above)
+                    .sorted(Comparator.comparingDouble(r -> r.threshold)).toArray(Rule[]::new);
+            return above.length == 0 && below.length == 0 ? null : new Thresholds(above, below);
+        }
+    }
+}
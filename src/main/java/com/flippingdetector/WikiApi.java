@@ -0,0 +1,24 @@
+package com.flippingdetector;
+
+/**
+ * Endpoints of the OSRS wiki real-time prices API. The base can be pointed at a
+ * local stand-in with {@code -Dflippingdetector.apiBase=http://127.0.0.1:8080/},
+ * which is how recorded sessions are replayed.
+ */
+final class WikiApi
+{
+    static final String BASE_PROPERTY = "flippingdetector.apiBase";
+    static final String DEFAULT_BASE = "https://prices.runescape.wiki/api/v1/osrs/";
+    static final String USER_AGENT = "FlippingDetector/1.0 (RuneLite plugin)";
+
+    private WikiApi() {}
+
+    /**
+     * @param endpoint path below the API root, with any query, e.g. {@code "latest"}
+     */
+    static String url(String endpoint)
+    {
+        String base = System.getProperty(BASE_PROPERTY, DEFAULT_BASE);
+        return base.endsWith("/") ? base + endpoint : base + "/" + endpoint;
+    }
+}
@@ -0,0 +1,353 @@
+package com.flippingdetector;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Streaming decoders for the wiki price API. Payloads are read token by token
+ * straight into primitive columns; no JSON tree is ever built.
+ */
+final class WikiDecoder
+{
+    private WikiDecoder() {}
+
+    /**
+     * Decodes a /latest payload into {@code out}, replacing its contents.
+     *
+     * @return number of bytes consumed from {@code body}
+     */
+    static long decodeLatest(InputStream body, LatestColumns out) throws IOException
+    {
+        CountingInputStream counted = new CountingInputStream(body);
+        out.clear();
+        try (JsonReader r = new JsonReader(new InputStreamReader(counted, StandardCharsets.UTF_8)))
+        {
+            r.beginObject();
+            while (r.hasNext())
+            {
+                if (!"data".equals(r.nextName()))
+                {
+                    r.skipValue();
+                    continue;
+                }
+
+                r.beginObject();
+                while (r.hasNext())
+                {
+                    int id = parseId(r.nextName());
+                    long high = 0, highTime = 0, low = 0, lowTime = 0;
+                    r.beginObject();
+                    while (r.hasNext())
+                    {
+                        String field = r.nextName();
+                        if (r.peek() == JsonToken.NULL)
+                        {
+                            r.nextNull();
+                            continue;
+                        }
+                        switch (field)
+                        {
+                            case "high": high = r.nextLong(); break;
+                            case "highTime": highTime = r.nextLong(); break;
+                            case "low": low = r.nextLong(); break;
+                            case "lowTime": lowTime = r.nextLong(); break;
+                            default: r.skipValue();
+                        }
+                    }
+                    r.endObject();
+                    if (id >= 0)
+                    {
+                        out.add(id, low, high, lowTime, highTime);
+                    }
+                }
+                r.endObject();
+            }
+            r.endObject();
+        }
+        return counted.count;
+    }
+
+    /**
+     * Decodes a /mapping payload into an id to (name, limit) table.
+     */
+    static Map<Integer, MappingCache.MapMeta> decodeMapping(InputStream body) throws IOException
+    {
+        Map<Integer, MappingCache.MapMeta> meta = new HashMap<>(8192);
+        try (JsonReader r = new JsonReader(new InputStreamReader(body, StandardCharsets.UTF_8)))
+        {
+            r.beginArray();
+            while (r.hasNext())
+            {
+                int id = -1, limit = 0;
+                String name = null;
+                r.beginObject();
+                while (r.hasNext())
+                {
+                    String field = r.nextName();
+                    if (r.peek() == JsonToken.NULL)
+                    {
+                        r.nextNull();
+                        continue;
+                    }
+                    switch (field)
+                    {
+                        case "id": id = r.nextInt(); break;
+                        case "name": name = r.nextString(); break;
+                        case "limit": limit = r.nextInt(); break;
+                        default: r.skipValue();
+                    }
+                }
+                r.endObject();
+                if (id >= 0 && name != null)
+                {
+                    meta.put(id, new MappingCache.MapMeta(name.intern(), limit));
+                }
+            }
+            r.endArray();
+        }
+        return meta;
+    }
+
+    /**
+     * Decodes a /5m, /1h or /24h payload into {@code out}, replacing its contents.
+     *
+     * @return the payload's own timestamp (epoch seconds), or 0 if absent
+     */
+    static long decodeAggregates(InputStream body, AggregateColumns out) throws IOException
+    {
+        long timestamp = 0;
+        out.clear();
+        try (JsonReader r = new JsonReader(new InputStreamReader(body, StandardCharsets.UTF_8)))
+        {
+            r.beginObject();
+            while (r.hasNext())
+            {
+                String name = r.nextName();
+                if ("timestamp".equals(name) && r.peek() == JsonToken.NUMBER)
+                {
+                    timestamp = r.nextLong();
+                    continue;
+                }
+                if (!"data".equals(name))
+                {
+                    r.skipValue();
+                    continue;
+                }
+
+                r.beginObject();
+                while (r.hasNext())
+                {
+                    int id = parseId(r.nextName());
+                    r.beginObject();
+                    long avgHigh = 0, avgLow = 0;
+                    int highVol = 0, lowVol = 0;
+                    while (r.hasNext())
+                    {
+                        String field = r.nextName();
+                        if (r.peek() == JsonToken.NULL)
+                        {
+                            r.nextNull();
+                            continue;
+                        }
+                        switch (field)
+                        {
+                            case "avgHighPrice": avgHigh = r.nextLong(); break;
+                            case "avgLowPrice": avgLow = r.nextLong(); break;
+                            case "highPriceVolume": highVol = r.nextInt(); break;
+                            case "lowPriceVolume": lowVol = r.nextInt(); break;
+                            default: r.skipValue();
+                        }
+                    }
+                    r.endObject();
+                    if (id >= 0)
+                    {
+                        out.add(id, avgLow, avgHigh, lowVol, highVol);
+                    }
+                }
+                r.endObject();
+            }
+            r.endObject();
+        }
+        return timestamp;
+    }
+
+    /**
+     * Decodes a /timeseries payload, passing each point to {@code sink} oldest first.
+     */
+    static void decodeTimeseries(InputStream body, TimeseriesSink sink) throws IOException
+    {
+        try (JsonReader r = new JsonReader(new InputStreamReader(body, StandardCharsets.UTF_8)))
+        {
+            r.beginObject();
+            while (r.hasNext())
+            {
+                if (!"data".equals(r.nextName()))
+                {
+                    r.skipValue();
+                    continue;
+                }
+
+                r.beginArray();
+                while (r.hasNext())
+                {
+                    long timestamp = 0, avgHigh = 0, avgLow = 0;
+                    int highVol = 0, lowVol = 0;
+                    r.beginObject();
+                    while (r.hasNext())
+                    {
+                        String field = r.nextName();
+                        if (r.peek() == JsonToken.NULL)
+                        {
+                            r.nextNull();
+                            continue;
+                        }
+                        switch (field)
+                        {
+                            case "timestamp": timestamp = r.nextLong(); break;
+                            case "avgHighPrice": avgHigh = r.nextLong(); break;
+                            case "avgLowPrice": avgLow = r.nextLong(); break;
+                            case "highPriceVolume": highVol = r.nextInt(); break;
+                            case "lowPriceVolume": lowVol = r.nextInt(); break;
+                            default: r.skipValue();
+                        }
+                    }
+                    r.endObject();
+                    sink.accept(timestamp, avgLow, avgHigh, lowVol + highVol);
+                }
+                r.endArray();
+            }
+            r.endObject();
+        }
+    }
+
+    @FunctionalInterface
+    interface TimeseriesSink
+    {
+        void accept(long timestamp, long avgLow, long avgHigh, int volume);
+    }
+
+    // Integer.parseInt without the NumberFormatException path; -1 for anything unexpected
+    private static int parseId(String key)
+    {
+        int n = key.length();
+        if (n == 0 || n > 9) return -1;
+        int v = 0;
+        for (int i = 0; i < n; i++)
+        {
+            int d = key.charAt(i) - '0';
+            if (d < 0 || d > 9) return -1;
+            v = v * 10 + d;
+        }
+        return v;
+    }
+
+    /**
+     * Reusable column buffer for one /latest payload. Owned by the price thread;
+     * arrays only grow, so steady-state decoding allocates nothing here.
+     */
+    static final class LatestColumns
+    {
+        int size;
+        int[] ids = new int[4096];
+        long[] low = new long[4096];
+        long[] high = new long[4096];
+        long[] lowTime = new long[4096];
+        long[] highTime = new long[4096];
+
+        void clear()
+        {
+            size = 0;
+        }
+
+        void add(int id, long lo, long hi, long loTime, long hiTime)
+        {
+            if (size == ids.length)
+            {
+                int cap = size * 2;
+                ids = Arrays.copyOf(ids, cap);
+                low = Arrays.copyOf(low, cap);
+                high = Arrays.copyOf(high, cap);
+                lowTime = Arrays.copyOf(lowTime, cap);
+                highTime = Arrays.copyOf(highTime, cap);
+            }
+            ids[size] = id;
+            low[size] = lo;
+            high[size] = hi;
+            lowTime[size] = loTime;
+            highTime[size] = hiTime;
+            size++;
+        }
+    }
+
+    /**
+     * Reusable column buffer for one /5m, /1h or /24h payload. Prices are 0 when
+     * nothing traded on that side during the interval.
+     */
+    static final class AggregateColumns
+    {
+        int size;
+        int[] ids = new int[4096];
+        long[] avgLow = new long[4096];
+        long[] avgHigh = new long[4096];
+        int[] lowVolume = new int[4096];
+        int[] highVolume = new int[4096];
+
+        void clear()
+        {
+            size = 0;
+        }
+
+        void add(int id, long lo, long hi, int loVol, int hiVol)
+        {
+            if (size == ids.length)
+            {
+                int cap = size * 2;
+                ids = Arrays.copyOf(ids, cap);
+                avgLow = Arrays.copyOf(avgLow, cap);
+                avgHigh = Arrays.copyOf(avgHigh, cap);
+                lowVolume = Arrays.copyOf(lowVolume, cap);
+                highVolume = Arrays.copyOf(highVolume, cap);
+            }
+            ids[size] = id;
+            avgLow[size] = lo;
+            avgHigh[size] = hi;
+            lowVolume[size] = loVol;
+            highVolume[size] = hiVol;
+            size++;
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream
+    {
+        long count;
+
+        CountingInputStream(InputStream in)
+        {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+    }
+}
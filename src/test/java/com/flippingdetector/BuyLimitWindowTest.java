@@ -0,0 +1,139 @@
+package com.flippingdetector;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BuyLimitWindowTest
+{
+    private static final long BUCKET = BuyLimitWindow.BUCKET_MS;
+    private static final long WINDOW = BuyLimitWindow.WINDOW_MS;
+    private static final long T0 = 1_700_000_000_000L / BUCKET * BUCKET;
+
+    @Test
+    public void purchasesLeaveTheWindowAfterFourHours()
+    {
+        BuyLimitWindow window = new BuyLimitWindow();
+        window.record(4151, 30, T0);
+        window.record(4151, 20, T0 + BUCKET);
+        assertEquals(50, window.bought(4151, T0 + BUCKET));
+
+        assertEquals(50, window.bought(4151, T0 + WINDOW));
+        assertEquals(20, window.bought(4151, T0 + WINDOW + BUCKET));
+        assertEquals(0, window.bought(4151, T0 + WINDOW + 2 * BUCKET));
+        assertEquals(0, window.bought(11832, T0));
+    }
+
+    @Test
+    public void midBucketPurchaseIsCountedForTheWholeWindow()
+    {
+        BuyLimitWindow window = new BuyLimitWindow();
+        long boughtAt = T0 + BUCKET / 2 + 1;
+        window.record(4151, 70, boughtAt);
+
+        assertEquals(70, window.bought(4151, boughtAt + Duration.ofMinutes(236).toMillis()));
+        assertEquals(70, window.bought(4151, boughtAt + Duration.ofMinutes(239).toMillis()));
+        assertEquals(70, window.bought(4151, boughtAt + WINDOW - 1));
+        // Gone no later than a bucket past four hours
+        assertEquals(0, window.bought(4151, boughtAt + WINDOW + BUCKET));
+    }
+
+    @Test
+    public void purchasesOlderThanTheRingAreDropped()
+    {
+        BuyLimitWindow window = new BuyLimitWindow();
+        window.record(4151, 10, T0 + WINDOW + BUCKET);
+        // Would otherwise land in the slot of the bucket just recorded
+        window.record(4151, 5, T0);
+        assertEquals(10, window.bought(4151, T0 + WINDOW + BUCKET));
+        // Late but still inside the window
+        window.record(4151, 3, T0 + 2 * BUCKET);
+        assertEquals(13, window.bought(4151, T0 + WINDOW + BUCKET));
+    }
+
+    @Test
+    public void ringWrapsAroundWithoutLosingRecentBuckets()
+    {
+        BuyLimitWindow window = new BuyLimitWindow();
+        // One unit every bucket for two windows; only the last window's worth stays
+        int buckets = (int) (WINDOW / BUCKET);
+        for (int b = 0; b < 2 * buckets; b++)
+        {
+            window.record(4151, 1, T0 + b * BUCKET);
+        }
+        long now = T0 + (2 * buckets - 1) * BUCKET;
+        assertEquals(buckets + 1, window.bought(4151, now));
+        assertEquals(buckets - 2, window.bought(4151, now + 3 * BUCKET));
+    }
+
+    @Test
+    public void expireDropsEmptyItems()
+    {
+        BuyLimitWindow window = new BuyLimitWindow();
+        window.record(4151, 10, T0);
+        window.record(11832, 5, T0 + WINDOW / 2);
+        window.expire(T0 + WINDOW + BUCKET);
+        assertEquals(1, window.totals().size());
+        assertEquals(Integer.valueOf(5), window.totals().get(11832));
+    }
+
+    @Test
+    public void totalsSaturateInsteadOfOverflowing()
+    {
+        BuyLimitWindow window = new BuyLimitWindow();
+        window.record(995, Integer.MAX_VALUE, T0);
+        window.record(995, Integer.MAX_VALUE, T0);
+        assertEquals(Integer.MAX_VALUE, window.bought(995, T0));
+    }
+
+    @Test
+    public void writeAndReadRoundTrip() throws IOException
+    {
+        BuyLimitWindow window = new BuyLimitWindow();
+        window.record(4151, 30, T0);
+        window.record(4151, 20, T0 + 2 * BUCKET);
+        window.record(11832, 7, T0 + BUCKET);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        window.write(new DataOutputStream(bytes));
+        BuyLimitWindow restored = new BuyLimitWindow();
+        restored.record(1, 1, T0);
+        restored.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        long now = T0 + 2 * BUCKET;
+        assertEquals(50, restored.bought(4151, now));
+        assertEquals(7, restored.bought(11832, now));
+        assertEquals(0, restored.bought(1, now));
+        // Aging continues from where the saved ring left off
+        assertEquals(20, restored.bought(4151, T0 + WINDOW + BUCKET));
+        assertTrue(restored.totals().containsKey(4151));
+    }
+
+    @Test
+    public void readsRingsOfTheOlderSize() throws IOException
+    {
+        // One item, head at bucket h, 48 slots with 4 units in h's slot and 9 in h-47's
+        long head = T0 / BUCKET + 100;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(1);
+        out.writeInt(4151);
+        out.writeLong(head);
+        for (int k = 0; k < 48; k++)
+        {
+            out.writeInt(k == Math.floorMod(head, 48L) ? 4 : k == Math.floorMod(head - 47, 48L) ? 9 : 0);
+        }
+
+        BuyLimitWindow window = new BuyLimitWindow();
+        window.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), 48);
+        assertEquals(13, window.bought(4151, head * BUCKET));
+        assertEquals(4, window.bought(4151, (head + 2) * BUCKET));
+    }
+}
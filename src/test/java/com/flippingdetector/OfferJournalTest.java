@@ -0,0 +1,137 @@
+package com.flippingdetector;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import net.runelite.api.GrandExchangeOfferState;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class OfferJournalTest
+{
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void replayReturnsAppendedRecordsInOrder() throws IOException
+    {
+        OfferJournal journal = journal();
+        journal.replay(-1, r -> {});
+        journal.open();
+        journal.append(record(0, 100));
+        journal.append(record(0, 250));
+        journal.append(record(3, 7));
+        journal.close();
+
+        List<OfferTracker.OfferRecord> replayed = new ArrayList<>();
+        OfferJournal reopened = journal();
+        assertEquals(3, reopened.replay(-1, replayed::add));
+        assertEquals(3, reopened.sequence());
+        assertEquals(0, replayed.get(0).getSlot());
+        assertEquals(100, replayed.get(0).getQuantityTraded());
+        assertEquals(250, replayed.get(1).getQuantityTraded());
+        assertEquals(3, replayed.get(2).getSlot());
+        assertEquals(GrandExchangeOfferState.BUYING, replayed.get(2).getState());
+        assertEquals(Instant.ofEpochMilli(1_700_000_000_000L), replayed.get(2).getTimestamp());
+    }
+
+    @Test
+    public void replaySkipsRecordsTheSnapshotCovers() throws IOException
+    {
+        OfferJournal journal = journal();
+        journal.replay(-1, r -> {});
+        journal.open();
+        journal.append(record(0, 100));
+        journal.append(record(0, 250));
+        journal.append(record(0, 400));
+        journal.close();
+
+        // As after a crash between writing a snapshot of the first two and deleting the journal
+        List<OfferTracker.OfferRecord> replayed = new ArrayList<>();
+        OfferJournal reopened = journal();
+        assertEquals(1, reopened.replay(2, replayed::add));
+        assertEquals(400, replayed.get(0).getQuantityTraded());
+        assertEquals(3, reopened.sequence());
+
+        assertEquals(0, journal().replay(3, r -> {}));
+    }
+
+    @Test
+    public void sequenceContinuesAfterCompaction() throws IOException
+    {
+        OfferJournal journal = journal();
+        journal.replay(-1, r -> {});
+        journal.open();
+        journal.append(record(0, 100));
+        journal.append(record(0, 250));
+        long covered = journal.sequence();
+        journal.compact(new byte[]{1});
+        journal.append(record(0, 400));
+        journal.close();
+        assertEquals(1, Files.readAllBytes(new File(tmp.getRoot(), "offers.bin").toPath()).length);
+
+        List<OfferTracker.OfferRecord> replayed = new ArrayList<>();
+        assertEquals(1, journal().replay(covered, replayed::add));
+        assertEquals(400, replayed.get(0).getQuantityTraded());
+    }
+
+    @Test
+    public void tornAndCorruptLinesAreSkipped() throws IOException
+    {
+        OfferJournal journal = journal();
+        journal.replay(-1, r -> {});
+        journal.open();
+        journal.append(record(0, 100));
+        journal.close();
+
+        File file = new File(tmp.getRoot(), "offers.journal");
+        Files.write(file.toPath(), "x,0,4151,BUYING,1,2,3,4\n2,0,4151,NOT_A_STATE,1,2,3,4\n3,0,4151,BUY".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        List<OfferTracker.OfferRecord> replayed = new ArrayList<>();
+        assertEquals(1, journal().replay(-1, replayed::add));
+        assertEquals(100, replayed.get(0).getQuantityTraded());
+    }
+
+    @Test
+    public void linesWithoutSequenceReplayOnce() throws IOException
+    {
+        File file = new File(tmp.getRoot(), "offers.journal");
+        Files.write(file.toPath(), "0,4151,BUYING,100,1000,1500000,1700000000000\n".getBytes(StandardCharsets.UTF_8));
+
+        OfferJournal journal = journal();
+        assertEquals(1, journal.replay(-1, r -> {}));
+        assertEquals(0, journal.sequence());
+        // Once a snapshot covers them they are not replayed again
+        assertEquals(0, journal().replay(0, r -> {}));
+    }
+
+    @Test
+    public void missingJournalReplaysNothing()
+    {
+        OfferJournal journal = journal();
+        assertEquals(0, journal.replay(5, r -> {}));
+        assertEquals(5, journal.sequence());
+        assertFalse(new File(tmp.getRoot(), "offers.journal").exists());
+    }
+
+    private OfferJournal journal()
+    {
+        return new OfferJournal(new File(tmp.getRoot(), "offers.bin"), new File(tmp.getRoot(), "offers.journal"));
+    }
+
+    private static OfferTracker.OfferRecord record(int slot, int traded)
+    {
+        return new OfferTracker.OfferRecord(slot, 4151, GrandExchangeOfferState.BUYING, traded, 1000, 1_500_000,
+                Instant.ofEpochMilli(1_700_000_000_000L));
+    }
+}
@@ -0,0 +1,247 @@
+package com.flippingdetector;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PriceStoreTest
+{
+    private static final long DAY = 20_000;
+    private static final long DAY_START = DAY * PriceStore.DAY_SECONDS;
+    private static final long NEXT_DAY_START = DAY_START + PriceStore.DAY_SECONDS;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void reopenRecoversAppendedBars() throws IOException
+    {
+        File dir = tmp.newFolder("prices");
+        PriceStore store = new PriceStore(dir);
+        store.open(30, DAY_START);
+        store.append(DAY_START + 300, bar(4151, 1_500_000, 1_550_000));
+        store.append(DAY_START + 600, bar(4151, 1_490_000, 1_560_000));
+        store.close();
+
+        store.open(30, DAY_START + 900);
+        assertArrayEquals(new long[]{DAY_START + 300, 1_500_000, DAY_START + 600, 1_490_000}, lows(store, 4151, DAY_START, NEXT_DAY_START));
+        // Bars at or before the last one stored are ignored
+        store.append(DAY_START + 600, bar(4151, 1, 2));
+        assertEquals(2, lows(store, 4151, DAY_START, NEXT_DAY_START).length / 2);
+        store.close();
+    }
+
+    @Test
+    public void tornFinalBatchIsDroppedOnReopen() throws IOException
+    {
+        File dir = tmp.newFolder("prices");
+        PriceStore store = new PriceStore(dir);
+        store.open(30, DAY_START);
+        store.append(DAY_START + 300, bar(4151, 1_500_000, 1_550_000));
+        store.append(DAY_START + 600, bar(4151, 1_490_000, 1_560_000));
+        store.close();
+
+        File log = new File(dir, "2024-10-04.log");
+        assertTrue(log.isFile());
+        try (RandomAccessFile f = new RandomAccessFile(log, "rw"))
+        {
+            f.setLength(f.length() - 2);
+        }
+
+        store.open(30, DAY_START + 900);
+        assertArrayEquals(new long[]{DAY_START + 300, 1_500_000}, lows(store, 4151, DAY_START, NEXT_DAY_START));
+        // The torn bytes are gone, so the next batch lands after the intact one
+        store.append(DAY_START + 900, bar(4151, 1_480_000, 1_570_000));
+        store.close();
+
+        store.open(30, DAY_START + 1200);
+        assertArrayEquals(new long[]{DAY_START + 300, 1_500_000, DAY_START + 900, 1_480_000}, lows(store, 4151, DAY_START, NEXT_DAY_START));
+        store.close();
+    }
+
+    @Test
+    public void batchWithoutMarkerIsDroppedOnReopen() throws IOException
+    {
+        File dir = tmp.newFolder("prices");
+        PriceStore store = new PriceStore(dir);
+        store.open(30, DAY_START);
+        store.append(DAY_START + 300, bar(4151, 1_500_000, 1_550_000));
+        store.close();
+
+        File log = new File(dir, "2024-10-04.log");
+        long intact = log.length();
+        try (RandomAccessFile f = new RandomAccessFile(log, "rw"))
+        {
+            // A complete batch whose marker never made it to disk
+            f.seek(intact);
+            f.write(new byte[]{0, 0, 0, 0, 1, (byte) 0x97, 0x20, 0x10, 1, 1, 1, 1});
+        }
+
+        store.open(30, DAY_START + 600);
+        assertArrayEquals(new long[]{DAY_START + 300, 1_500_000}, lows(store, 4151, DAY_START, NEXT_DAY_START));
+        store.close();
+        assertEquals(intact, log.length());
+    }
+
+    @Test
+    public void batchCutMidRowsIsDroppedWhole() throws IOException
+    {
+        File dir = tmp.newFolder("prices");
+        PriceStore store = new PriceStore(dir);
+        store.open(30, DAY_START);
+        store.append(DAY_START + 300, bar(4151, 1_500_000, 1_550_000));
+        store.close();
+        File log = new File(dir, "2024-10-04.log");
+        long intact = log.length();
+
+        WikiDecoder.AggregateColumns batch = bar(2, 180, 190);
+        batch.add(4151, 1_490_000, 1_560_000, 10, 20);
+        batch.add(561, 150, 160, 10, 20);
+        store.open(30, DAY_START + 600);
+        store.append(DAY_START + 600, batch);
+        store.close();
+        try (RandomAccessFile f = new RandomAccessFile(log, "rw"))
+        {
+            // Past the first row, partway through the rest
+            f.setLength(intact + (f.length() - intact) / 2);
+        }
+
+        store.open(30, DAY_START + 900);
+        assertArrayEquals(new long[]{DAY_START + 300, 1_500_000}, lows(store, 4151, DAY_START, NEXT_DAY_START));
+        assertEquals(0, lows(store, 2, DAY_START, NEXT_DAY_START).length);
+        assertEquals(0, lows(store, 561, DAY_START, NEXT_DAY_START).length);
+        assertEquals(intact, log.length());
+        store.append(DAY_START + 900, bar(2, 181, 191));
+        store.close();
+
+        store.open(30, DAY_START + 1200);
+        assertArrayEquals(new long[]{DAY_START + 900, 181}, lows(store, 2, DAY_START, NEXT_DAY_START));
+        assertEquals(1, lows(store, 4151, DAY_START, NEXT_DAY_START).length / 2);
+        store.close();
+    }
+
+    @Test
+    public void compactedDayReadsBackTheSameBars() throws IOException
+    {
+        File dir = tmp.newFolder("prices");
+        PriceStore store = new PriceStore(dir);
+        store.open(30, DAY_START);
+        // Prices move both ways so the zigzag deltas go negative, and a side can be missing
+        long[] lows = {1_500_000, 1_400_000, 0, 1_600_000};
+        for (int i = 0; i < lows.length; i++)
+        {
+            WikiDecoder.AggregateColumns bar = new WikiDecoder.AggregateColumns();
+            bar.add(12_000, 2_000_000_000L + i, 2_100_000_000L - i, 1, 2);
+            bar.add(4151, lows[i], 1_600_000, 10 + i, 20 + i);
+            bar.add(2, 5, 6, 100_000, 200_000);
+            store.append(DAY_START + 300L * (i + 1), bar);
+        }
+        long[] before = lows(store, 4151, DAY_START, NEXT_DAY_START);
+        List<long[]> scannedBefore = scan(store, DAY_START, NEXT_DAY_START);
+
+        // The first bar of the next day compacts the one before
+        store.append(NEXT_DAY_START, bar(4151, 1_700_000, 1_800_000));
+        assertTrue(new File(dir, "2024-10-04.day").isFile());
+        assertFalse(new File(dir, "2024-10-04.log").isFile());
+
+        assertArrayEquals(before, lows(store, 4151, DAY_START, NEXT_DAY_START));
+        assertArrayEquals(new long[]{DAY_START + 600, 1_400_000, DAY_START + 900, 0}, lows(store, 4151, DAY_START + 600, DAY_START + 1200));
+        assertArrayEquals(new long[]{NEXT_DAY_START, 1_700_000}, lows(store, 4151, NEXT_DAY_START, NEXT_DAY_START + 300));
+        assertEquals(0, lows(store, 999, DAY_START, NEXT_DAY_START).length);
+
+        List<long[]> scannedAfter = scan(store, DAY_START, NEXT_DAY_START);
+        assertEquals(scannedBefore.size(), scannedAfter.size());
+        for (long[] row : scannedBefore)
+        {
+            assertTrue(scannedAfter.stream().anyMatch(r -> Arrays.equals(r, row)));
+        }
+        store.close();
+
+        // And again from the mapped file after a restart
+        store.open(30, NEXT_DAY_START + 600);
+        assertArrayEquals(before, lows(store, 4151, DAY_START, NEXT_DAY_START));
+        store.close();
+    }
+
+    @Test
+    public void restartAfterMidnightKeepsCompactedDay() throws IOException
+    {
+        File dir = tmp.newFolder("prices");
+        PriceStore store = new PriceStore(dir);
+        store.open(30, DAY_START);
+        for (int i = 1; i <= 10; i++)
+        {
+            store.append(DAY_START + 300L * i, bar(4151, 1_000_000 + i, 1_100_000));
+        }
+        store.close();
+
+        // Started just after midnight: yesterday's log is compacted on open
+        store.open(30, NEXT_DAY_START + 60);
+        assertTrue(new File(dir, "2024-10-04.day").isFile());
+        // The first /5m poll still returns yesterday's last bucket
+        store.append(NEXT_DAY_START - 300, bar(4151, 1, 2));
+        store.append(NEXT_DAY_START, bar(4151, 1_200_000, 1_300_000));
+        store.append(NEXT_DAY_START + 300, bar(4151, 1_200_001, 1_300_000));
+        store.close();
+
+        store.open(30, NEXT_DAY_START + 600);
+        assertEquals(10, lows(store, 4151, DAY_START, NEXT_DAY_START).length / 2);
+        assertEquals(2, lows(store, 4151, NEXT_DAY_START, NEXT_DAY_START + PriceStore.DAY_SECONDS).length / 2);
+        store.close();
+    }
+
+    @Test
+    public void daysPastRetentionArePruned() throws IOException
+    {
+        File dir = tmp.newFolder("prices");
+        PriceStore store = new PriceStore(dir);
+        store.open(2, DAY_START);
+        store.append(DAY_START + 300, bar(4151, 1_000_000, 1_100_000));
+        store.append(NEXT_DAY_START + 300, bar(4151, 1_000_000, 1_100_000));
+        store.close();
+        assertTrue(new File(dir, "2024-10-04.day").isFile());
+
+        store.open(2, NEXT_DAY_START + PriceStore.DAY_SECONDS);
+        assertFalse(new File(dir, "2024-10-04.day").isFile());
+        assertTrue(new File(dir, "2024-10-05.day").isFile());
+        store.close();
+    }
+
+    private static WikiDecoder.AggregateColumns bar(int itemId, long low, long high)
+    {
+        WikiDecoder.AggregateColumns bar = new WikiDecoder.AggregateColumns();
+        bar.add(itemId, low, high, 10, 20);
+        return bar;
+    }
+
+    // Timestamp and low of each bar, flattened
+    private static long[] lows(PriceStore store, int itemId, long fromSec, long toSec)
+    {
+        List<Long> out = new ArrayList<>();
+        store.range(itemId, fromSec, toSec, (ts, low, high, lowVolume, highVolume) ->
+        {
+            out.add(ts);
+            out.add(low);
+        });
+        return out.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static List<long[]> scan(PriceStore store, long fromSec, long toSec)
+    {
+        List<long[]> out = new ArrayList<>();
+        store.scan(fromSec, toSec, (id, ts, low, high, lowVolume, highVolume) ->
+                out.add(new long[]{id, ts, low, high, lowVolume, highVolume}));
+        return out;
+    }
+}